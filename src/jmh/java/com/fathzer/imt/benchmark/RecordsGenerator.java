@@ -0,0 +1,76 @@
+package com.fathzer.imt.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/** A generator of synthetic records.
+ * <br>Tags are named <i>tag0</i>, <i>tag1</i>, ... and follow a Zipfian distribution: the tag of rank <i>i</i> is chosen
+ * with a probability proportional to 1/(i+1)<sup>exponent</sup>. So <i>tag0</i> is the most frequent tag and the last tags are rare,
+ * like the values of most real world attributes.
+ * <br>The generator is seeded, so the same parameters always produce the same records.
+ */
+public class RecordsGenerator {
+	private final double[] cumulated;
+	private final int tagsPerRecord;
+	private final Random random;
+
+	/** Constructor.
+	 * @param tagsCount The number of distinct tags
+	 * @param tagsPerRecord The number of tags of each record (the density)
+	 * @param exponent The exponent of the Zipfian distribution (0 for a uniform distribution)
+	 * @param seed The seed of the random generator
+	 * @throws IllegalArgumentException if tagsPerRecord is greater than tagsCount
+	 */
+	public RecordsGenerator(int tagsCount, int tagsPerRecord, double exponent, long seed) {
+		if (tagsPerRecord>tagsCount) {
+			throw new IllegalArgumentException();
+		}
+		this.cumulated = new double[tagsCount];
+		double sum = 0;
+		for (int i = 0; i < tagsCount; i++) {
+			sum += 1/Math.pow(i+1, exponent);
+			cumulated[i] = sum;
+		}
+		for (int i = 0; i < tagsCount; i++) {
+			cumulated[i] /= sum;
+		}
+		this.tagsPerRecord = tagsPerRecord;
+		this.random = new Random(seed);
+	}
+
+	/** Gets a tag name.
+	 * @param rank The rank of the tag (0 for the most frequent tag)
+	 * @return a String
+	 */
+	public static String getTag(int rank) {
+		return "tag"+rank;
+	}
+
+	/** Generates a record.
+	 * @return The tags of the record
+	 */
+	public List<String> next() {
+		Set<String> tags = new LinkedHashSet<>();
+		while (tags.size()<tagsPerRecord) {
+			int index = Arrays.binarySearch(cumulated, random.nextDouble());
+			tags.add(getTag(index<0 ? Math.min(-index-1, cumulated.length-1) : index));
+		}
+		return new ArrayList<>(tags);
+	}
+
+	/** Generates records.
+	 * @param count The number of records
+	 * @return a list of records
+	 */
+	public List<List<String>> next(int count) {
+		List<List<String>> result = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(next());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,220 @@
+package com.fathzer.imt.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.TagsTable;
+import com.fathzer.imt.implementation.SimpleTagsTableFactory;
+
+/** Benchmarks of the table hot paths, for each bitmap implementation.
+ * <br>The records are generated by {@link RecordsGenerator} with a fixed seed, and each benchmark runs in a forked JVM
+ * with a fixed number of iterations, so that results of different versions can be compared.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class TableBenchmark {
+	private static final long SEED = 12345L;
+
+	/** The generated records and the table built from them. */
+	@State(Scope.Benchmark)
+	public static class TableState {
+		/** The bitmap implementation. */
+		@Param({"ROARING", "EWAH", "BITSET"})
+		public String factory;
+		/** The number of records. */
+		@Param({"100000"})
+		public int records;
+		/** The number of distinct tags. */
+		@Param({"1000"})
+		public int tags;
+		/** The number of tags per record. */
+		@Param({"10"})
+		public int density;
+		/** The exponent of the Zipfian distribution of the tags. */
+		@Param({"1.0"})
+		public double exponent;
+
+		List<List<String>> data;
+		TagsTable<String> table;
+		byte[] serialized;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			data = new RecordsGenerator(tags, density, exponent, SEED).next(records);
+			table = build(getFactory(), data);
+			serialized = serialize(table);
+		}
+
+		SimpleTagsTableFactory getFactory() {
+			if ("ROARING".equals(factory)) {
+				return SimpleTagsTableFactory.ROARING_FACTORY;
+			} else if ("EWAH".equals(factory)) {
+				return SimpleTagsTableFactory.EWAH_FACTORY;
+			} else if ("BITSET".equals(factory)) {
+				return SimpleTagsTableFactory.BITSET_FACTORY;
+			} else {
+				throw new IllegalArgumentException("Unknown factory "+factory);
+			}
+		}
+	}
+
+	/** An expression to evaluate. */
+	@State(Scope.Benchmark)
+	public static class ExpressionState {
+		/** The shape of the expression. */
+		@Param({"frequentTag", "rareTag", "and", "selectiveAnd", "andNot", "orChain", "nested"})
+		public String shape;
+
+		String expression;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			if ("frequentTag".equals(shape)) {
+				expression = "tag0";
+			} else if ("rareTag".equals(shape)) {
+				expression = "tag900";
+			} else if ("and".equals(shape)) {
+				expression = "tag0 && tag1";
+			} else if ("selectiveAnd".equals(shape)) {
+				expression = "tag0 && tag1 && tag200";
+			} else if ("andNot".equals(shape)) {
+				expression = "tag0 && !tag1";
+			} else if ("orChain".equals(shape)) {
+				StringBuilder builder = new StringBuilder();
+				for (int i = 10; i < 30; i++) {
+					if (builder.length()>0) {
+						builder.append(" || ");
+					}
+					builder.append(RecordsGenerator.getTag(i));
+				}
+				expression = builder.toString();
+			} else if ("nested".equals(shape)) {
+				expression = "((tag0 || tag5) && !(tag2 && tag3)) || tag100";
+			} else {
+				throw new IllegalArgumentException("Unknown shape "+shape);
+			}
+		}
+	}
+
+	/** A fresh copy of the table, for benchmarks that modify it.
+	 * <br>The table is copied before each iteration, so the benchmarks that use this state should run a single invocation per iteration
+	 * (see {@link TableBenchmark#deleteRecords(DeleteState)}).
+	 */
+	@State(Scope.Thread)
+	public static class DeleteState {
+		/** The number of records to delete. */
+		@Param({"1000"})
+		public int deletions;
+
+		int[] ids;
+		TagsTable<String> source;
+		TagsTable<String> table;
+
+		@Setup(Level.Trial)
+		public void setUp(TableState state) {
+			// JMH generates uncompilable code when many setup methods of a state depend on the same state, keep the table here
+			source = state.table;
+			Random random = new Random(SEED);
+			ids = new int[deletions];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = random.nextInt(state.records);
+			}
+		}
+
+		@Setup(Level.Iteration)
+		public void copy() {
+			table = source.clone();
+		}
+	}
+
+	static TagsTable<String> build(SimpleTagsTableFactory factory, List<List<String>> data) {
+		TagsTable<String> table = new TagsTable<>(factory);
+		for (List<String> record : data) {
+			table.addRecord(record.iterator(), false);
+		}
+		return table;
+	}
+
+	static byte[] serialize(TagsTable<String> table) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		try {
+			out.writeObject(table);
+		} finally {
+			out.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	@Benchmark
+	public TagsTable<String> addRecords(TableState state) {
+		return build(state.getFactory(), state.data);
+	}
+
+	@Benchmark
+	public Bitmap evaluate(TableState state, ExpressionState expression) {
+		return state.table.evaluate(expression.expression, false);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 10, batchSize = 1)
+	@Measurement(iterations = 20, batchSize = 1)
+	public TagsTable<String> deleteRecords(DeleteState state) {
+		for (int id : state.ids) {
+			if (id<state.table.getSize() && !state.table.getDeletedRecords().contains(id)) {
+				state.table.deleteRecord(id);
+			}
+		}
+		return state.table;
+	}
+
+	@Benchmark
+	public TagsTable<String> cloneTable(TableState state) {
+		return state.table.clone();
+	}
+
+	@Benchmark
+	public TagsTable<String> getLocked(TableState state) {
+		return state.table.getLocked();
+	}
+
+	@Benchmark
+	public byte[] serialize(TableState state) throws IOException {
+		return serialize(state.table);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Benchmark
+	public TagsTable<String> deserialize(TableState state) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state.serialized));
+		try {
+			return (TagsTable<String>) in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+}
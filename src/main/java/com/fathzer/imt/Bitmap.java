@@ -1,5 +1,9 @@
 package com.fathzer.imt;
 
+import java.util.Collection;
+
+import com.fathzer.imt.util.IntBatchIterator;
+import com.fathzer.imt.util.IntConsumer;
 import com.fathzer.imt.util.IntIterator;
 
 /** A Bitmap (a compact representation of a sorted array of integers).
@@ -32,17 +36,70 @@ public interface Bitmap extends Cloneable {
 	 */
 	void and(Bitmap bitmap);
 	
+	/** Performs the union of this bitmap with many other ones.
+	 * <br>This bitmap is modified.
+	 * <br>Implementations use, when available, multi-way aggregation algorithms that are faster than calling {@link #or(Bitmap)} for each bitmap.
+	 * @param bitmaps the other bitmaps
+	 * @throws IllegalStateException if this bitmap is locked
+	 */
+	void or(Collection<Bitmap> bitmaps);
+	
+	/** Performs the intersection of this bitmap with many other ones.
+	 * <br>This bitmap is modified.
+	 * <br>Implementations use, when available, multi-way aggregation algorithms that are faster than calling {@link #and(Bitmap)} for each bitmap.
+	 * <br>The bitmaps are processed in the collection order, so it is a good idea to put the smallest bitmaps first.
+	 * @param bitmaps the other bitmaps
+	 * @throws IllegalStateException if this bitmap is locked
+	 */
+	void and(Collection<Bitmap> bitmaps);
+	
 	/** Clears all of the bits in this Bitmap whose corresponding bit is set in another one.
 	 * @param bitmap second bitmap
 	 * @throws IllegalStateException if this bitmap is locked
 	 */
 	void andNot(Bitmap bitmap);
 	
+	/** Gets the cardinality of the intersection of this bitmap with another one.
+	 * <br>Neither this bitmap, nor the other one is modified.
+	 * @param bitmap second bitmap
+	 * @return a positive or null integer
+	 */
+	int andCardinality(Bitmap bitmap);
+	
+	/** Gets the cardinality of the union of this bitmap with another one.
+	 * <br>Neither this bitmap, nor the other one is modified.
+	 * @param bitmap second bitmap
+	 * @return a positive or null integer
+	 */
+	int orCardinality(Bitmap bitmap);
+	
+	/** Gets the number of bits set in this bitmap and not set in another one.
+	 * <br>Neither this bitmap, nor the other one is modified.
+	 * @param bitmap second bitmap
+	 * @return a positive or null integer
+	 */
+	int andNotCardinality(Bitmap bitmap);
+	
 	/** Negates this bitmap.
 	 * @param size The length of the bitmap (bits after this length will not be set)
 	 * @throws IllegalStateException if this bitmap is locked
 	 */
 	void not(int size);
+
+	/** Negates the bits of this bitmap whose indexes are in a range.
+	 * @param from The first index of the range (inclusive)
+	 * @param to The end of the range (exclusive)
+	 * @throws IllegalStateException if this bitmap is locked
+	 */
+	void flip(int from, int to);
+
+	/** Gets the bits of this bitmap whose indexes are in a range.
+	 * <br>The bits keep their indexes, so the ranges of a bitmap can be processed independently and their results merged with {@link #or(Collection)}.
+	 * @param from The first index of the range (inclusive)
+	 * @param to The end of the range (exclusive)
+	 * @return A new <b>mutable</b> bitmap that contains only the bits of this in [from, to[
+	 */
+	Bitmap getRange(int from, int to);
 	
 	/**  Recovers allocated but unused memory
 	 */
@@ -52,6 +109,17 @@ public interface Bitmap extends Cloneable {
 	 * @return An iterator over set bits. 
 	 */
 	IntIterator getIterator();
+
+	/** Gets an iterator that returns this bitmap's set bits by batches.
+	 * <br>Set bits are returned in ascending order.
+	 * @return An iterator over set bits.
+	 */
+	IntBatchIterator getBatchIterator();
+
+	/** Calls an operation for each bit set in this bitmap, in ascending order.
+	 * @param consumer The operation
+	 */
+	void forEach(IntConsumer consumer);
 	
 	/** Tests whether this bitmap is empty.
 	 * @return true if no bit is set.
@@ -76,6 +144,13 @@ public interface Bitmap extends Cloneable {
 	 */
 	void add(int index);
 
+	/** Sets many bits in this bitmap to 1.
+	 * @param indexes The indexes of the bits to set, in ascending order
+	 * @param length The number of indexes to read at the beginning of <i>indexes</i>
+	 * @throws IllegalStateException if this bitmap is locked
+	 */
+	void add(int[] indexes, int length);
+
 	/** Set a bit in this bitmap to 0.
 	 * @param index The index of the bit to set to 0
 	 * @throws IllegalStateException if this bitmap is locked
@@ -91,6 +166,11 @@ public interface Bitmap extends Cloneable {
 	 * @return a new bitmap if this is mutable or this if it is immutable. This method guarantees no side effect between this and the returned bitmap.
 	 */
 	Bitmap getLocked();
+
+	/** Locks this bitmap in place.
+	 * <br>Unlike {@link #getLocked()}, this method does not copy the bitmap. It should only be called on a bitmap that is not referenced by an object that could modify it.
+	 */
+	void lock();
 	
 	/** Tests whether this bitmap is immutable.
 	 * @return true if the bitmap is immutable.
@@ -0,0 +1,124 @@
+package com.fathzer.imt;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+
+import com.fathzer.imt.util.Pools;
+
+/** A loader that builds a table from many records faster than {@link TagsTable#addRecord(Iterator, boolean)}.
+ * <br>The loader does not update bitmaps while records are added. It buffers, for each tag, the sorted array of its records indexes.
+ * Then {@link #build()} creates each bitmap in one shot (see {@link Bitmap#add(int[], int)}), concurrently on the {@link Pools#getForkJoinPool() shared fork/join pool}.
+ * <br>Records get consecutive indexes, starting at 0.
+ * <br>This class is not thread safe.
+ * @param <T> The type of tags.
+ * @author Jean-Marc Astesana
+ */
+public class BulkLoader<T> {
+	/** A task that creates the bitmaps of some tags.
+	 * <br>The task is split in halves until the number of tags is small enough.
+	 */
+	private static final class BitmapsTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 16;
+
+		private final TagsTableFactory<?> factory;
+		private final IdBuffer[] buffers;
+		private final Bitmap[] result;
+		private final int from;
+		private final int to;
+
+		BitmapsTask(TagsTableFactory<?> factory, IdBuffer[] buffers, Bitmap[] result, int from, int to) {
+			this.factory = factory;
+			this.buffers = buffers;
+			this.result = result;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to-from<=THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					Bitmap bitmap = factory.create();
+					buffers[i].addTo(bitmap);
+					bitmap.trim();
+					result[i] = bitmap;
+					// Release the buffer as soon as possible
+					buffers[i] = null;
+				}
+			} else {
+				int middle = (from+to) >>> 1;
+				invokeAll(new BitmapsTask(factory, buffers, result, from, middle), new BitmapsTask(factory, buffers, result, middle, to));
+			}
+		}
+	}
+
+	private final TagsTableFactory<T> factory;
+	private Map<T, IdBuffer> buffers;
+	private int size;
+
+	/** Constructor.
+	 * @param factory the factory used to build the table.
+	 */
+	public BulkLoader(TagsTableFactory<T> factory) {
+		this.factory = factory;
+		this.buffers = new HashMap<>();
+		this.size = 0;
+	}
+
+	/** Adds a record.
+	 * @param record an iterator on the tags contained in the record
+	 * @return the index of the record in the built table.
+	 * @throws IllegalStateException if the table was already built
+	 */
+	public int addRecord(Iterator<T> record) {
+		check();
+		int index = size;
+		while (record.hasNext()) {
+			T tag = record.next();
+			IdBuffer buffer = buffers.get(tag);
+			if (buffer==null) {
+				buffer = new IdBuffer();
+				buffers.put(tag, buffer);
+			}
+			buffer.add(index);
+		}
+		size++;
+		return index;
+	}
+
+	/** Gets the number of records added to this loader.
+	 * @return an integer
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/** Builds the table.
+	 * <br>This loader can't be used anymore after this method is called.
+	 * @return a new mutable table that contains the added records.
+	 * @throws IllegalStateException if the table was already built
+	 */
+	@SuppressWarnings("unchecked")
+	public TagsTable<T> build() {
+		check();
+		Object[] tags = buffers.keySet().toArray();
+		IdBuffer[] ids = buffers.values().toArray(new IdBuffer[tags.length]);
+		buffers = null;
+		Bitmap[] bitmaps = new Bitmap[tags.length];
+		Pools.getForkJoinPool().invoke(new BitmapsTask(factory, ids, bitmaps, 0, bitmaps.length));
+		BitmapMap<T> map = factory.buildmap();
+		for (int i = 0; i < tags.length; i++) {
+			map.put((T)tags[i], bitmaps[i]);
+		}
+		return new TagsTable<>(factory, map, size);
+	}
+
+	private void check() {
+		if (buffers==null) {
+			throw new IllegalStateException();
+		}
+	}
+}
@@ -3,6 +3,7 @@ package com.fathzer.imt;
 /** An evaluator.
  * It evaluates expression and returns the result as a Bitmap.
  * <br><b>Warning</b>: Classes that implement this interface are supposed to be thread safe. 
+ * <br>Evaluators that implement {@link ExtendedEvaluator} give access to all the table's features.
  * @author JM Astesana
  */
 public interface Evaluator<T> {
@@ -10,7 +11,8 @@ public interface Evaluator<T> {
 	 * @param table The table on which to evaluate the expression.
 	 * @param expression The expression to evaluate
 	 * @param failIfUnknown true if the method should fail if a tag is unknown, false if unknown tags should be assumed included in no records.
-	 * @return A bitmap that contains the index of the records that satisfies the expression.
+	 * @return A bitmap that contains the index of the not deleted records that satisfies the expression.
+	 * It is either locked, or owned by the caller (no other object references it).
 	 * @throws UnknownTagException if the expression refers to unknown tags and <i>failIfUnknown</i> is true. Otherwise, Evaluator instances should not throw and exception but consider unknwon tags as use in no record.
 	 */
 	Bitmap evaluate(TagsTable<T> table, String expression, boolean failIfUnknown);
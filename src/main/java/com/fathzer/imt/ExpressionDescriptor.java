@@ -0,0 +1,69 @@
+package com.fathzer.imt;
+
+import java.util.Collections;
+import java.util.Set;
+
+/** A description of a logical expression.
+ * <br>It gives the information required to cache the results of an expression.
+ * @author Jean-Marc Astesana
+ * @param <T> The type of the table tags.
+ */
+public class ExpressionDescriptor<T> {
+	private final String key;
+	private final Set<T> tags;
+	private final Set<String> prefixes;
+	private final boolean monotone;
+
+	/** Constructor.
+	 * @param key The normalized expression
+	 * @param tags The tags the expression refers to
+	 * @param monotone true if the expression result only contains records that have at least one of its tags.
+	 */
+	public ExpressionDescriptor(String key, Set<T> tags, boolean monotone) {
+		this(key, tags, Collections.<String>emptySet(), monotone);
+	}
+
+	/** Constructor.
+	 * @param key The normalized expression
+	 * @param tags The tags the expression refers to
+	 * @param prefixes The prefixes of the tags patterns the expression refers to (for instance <i>color:</i> for <i>color:*</i>)
+	 * @param monotone true if the expression result only contains records that have at least one of its tags.
+	 */
+	public ExpressionDescriptor(String key, Set<T> tags, Set<String> prefixes, boolean monotone) {
+		this.key = key;
+		this.tags = tags;
+		this.prefixes = prefixes;
+		this.monotone = monotone;
+	}
+
+	/** Gets the normalized expression.
+	 * <br>Two equivalent expressions that only differ by their spaces, their useless brackets or their operands order have the same key.
+	 * @return a String
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/** Gets the tags the expression refers to.
+	 * @return a set of tags
+	 */
+	public Set<T> getTags() {
+		return tags;
+	}
+
+	/** Gets the prefixes of the tags patterns the expression refers to.
+	 * <br>The tags that match a pattern depend on the table, so they are not returned by {@link #getTags()}.
+	 * @return a set of prefixes, empty if the expression contains no pattern.
+	 */
+	public Set<String> getPrefixes() {
+		return prefixes;
+	}
+
+	/** Tests whether the expression result only depends on its tags.
+	 * <br>An expression that contains a negation is not monotone, its result also depends on the table size and deleted records.
+	 * @return true if the result of the expression can only change when the records of its tags change.
+	 */
+	public boolean isMonotone() {
+		return monotone;
+	}
+}
@@ -0,0 +1,90 @@
+package com.fathzer.imt;
+
+import java.util.List;
+
+import com.fathzer.imt.util.IntIterator;
+
+/** An evaluator that supports the table's optimized queries.
+ * <br>{@link TagsTable} uses these methods when the evaluator of its factory implements this interface.
+ * Otherwise, it computes its queries from {@link #evaluate(TagsTable, String, boolean)}, the result cache is disabled
+ * and materialized views can't be registered.
+ * <br><b>Warning</b>: Classes that implement this interface are supposed to be thread safe. 
+ * @param <T> The type of the tags.
+ */
+public interface ExtendedEvaluator<T> extends Evaluator<T> {
+	/** Evaluates an expression using many threads.
+	 * <br>The result is the same as {@link #evaluate(TagsTable, String, boolean)}, but implementations may split the records in ranges
+	 * and evaluate the expression on each range concurrently. It is useful on huge tables.
+	 * @param table The table on which to evaluate the expression.
+	 * @param expression The expression to evaluate
+	 * @param failIfUnknown true if the method should fail if a tag is unknown, false if unknown tags should be assumed included in no records.
+	 * @return A bitmap that contains the index of the not deleted records that satisfies the expression.
+	 * It is either locked, or owned by the caller (no other object references it).
+	 * @throws UnknownTagException if the expression refers to unknown tags and <i>failIfUnknown</i> is true.
+	 */
+	Bitmap evaluateParallel(TagsTable<T> table, String expression, boolean failIfUnknown);
+
+	/** Evaluates many expressions.
+	 * <br>The result is the same as calling {@link #evaluate(TagsTable, String, boolean)} for each expression, but implementations
+	 * may share the evaluation of common subexpressions or evaluate the expressions concurrently.
+	 * @param table The table on which to evaluate the expressions.
+	 * @param expressions The expressions to evaluate
+	 * @param failIfUnknown true if the method should fail if a tag is unknown, false if unknown tags should be assumed included in no records.
+	 * @return A list of bitmaps, in the same order as the expressions. Like the result of {@link #evaluate(TagsTable, String, boolean)},
+	 * each bitmap excludes the deleted records and is either locked or owned by the caller.
+	 * @throws UnknownTagException if an expression refers to unknown tags and <i>failIfUnknown</i> is true.
+	 */
+	List<Bitmap> evaluateAll(TagsTable<T> table, List<String> expressions, boolean failIfUnknown);
+
+	/** Tests whether a record satisfies an expression.
+	 * <br>The expression is not evaluated on the whole table, only the record is tested.
+	 * This method does not check whether the record is deleted.
+	 * @param table The table that contains the record.
+	 * @param expression The expression to test
+	 * @param id The record's id
+	 * @param failIfUnknown true if the method should fail if a tag is unknown, false if unknown tags should be assumed included in no records.
+	 * @return true if the record satisfies the expression.
+	 * @throws UnknownTagException if the expression refers to unknown tags and <i>failIfUnknown</i> is true.
+	 */
+	boolean matches(TagsTable<T> table, String expression, int id, boolean failIfUnknown);
+
+	/** Evaluates an expression and reports statistics about the evaluation of each node of its plan.
+	 * <br>The expression is evaluated as {@link #evaluate(TagsTable, String, boolean)} does, but the time spent in each node, and
+	 * the cardinality and memory size of its result, are recorded. This makes the evaluation a little slower.
+	 * @param table The table on which to evaluate the expression.
+	 * @param expression The expression to evaluate
+	 * @param failIfUnknown true if the method should fail if a tag is unknown, false if unknown tags should be assumed included in no records.
+	 * @return The evaluated plan.
+	 * @throws UnknownTagException if the expression refers to unknown tags and <i>failIfUnknown</i> is true.
+	 */
+	QueryPlan explain(TagsTable<T> table, String expression, boolean failIfUnknown);
+
+	/** Describes an expression.
+	 * @param expression The expression to describe
+	 * @return The expression's descriptor
+	 */
+	ExpressionDescriptor<T> describe(String expression);
+
+	/** Counts the records that satisfy an expression.
+	 * <br>Like {@link #evaluate(TagsTable, String, boolean)}, this method excludes the table's deleted records.
+	 * @param table The table on which to evaluate the expression.
+	 * @param expression The expression to evaluate
+	 * @param failIfUnknown true if the method should fail if a tag is unknown, false if unknown tags should be assumed included in no records.
+	 * @return The number of not deleted records that satisfy the expression.
+	 * @throws UnknownTagException if the expression refers to unknown tags and <i>failIfUnknown</i> is true.
+	 */
+	int count(TagsTable<T> table, String expression, boolean failIfUnknown);
+
+	/** Gets an iterator over the records that satisfy an expression.
+	 * <br>Records are returned in ascending order and are found lazily while the iterator is consumed,
+	 * so stopping the iteration early avoids evaluating the whole expression.
+	 * <br>Like {@link #count(TagsTable, String, boolean)}, this method excludes the table's deleted records.
+	 * <br>The table should not be modified while the iterator is in use.
+	 * @param table The table on which to evaluate the expression.
+	 * @param expression The expression to evaluate
+	 * @param failIfUnknown true if the method should fail if a tag is unknown, false if unknown tags should be assumed included in no records.
+	 * @return An iterator over the not deleted records that satisfy the expression.
+	 * @throws UnknownTagException if the expression refers to unknown tags and <i>failIfUnknown</i> is true.
+	 */
+	IntIterator getIterator(TagsTable<T> table, String expression, boolean failIfUnknown);
+}
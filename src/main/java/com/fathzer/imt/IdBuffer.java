@@ -0,0 +1,33 @@
+package com.fathzer.imt;
+
+import java.util.Arrays;
+
+/** A growable array of records indexes, added in ascending order.
+ * <br>It is used to group the records of a tag before adding them to the tag's bitmap at once (see {@link Bitmap#add(int[], int)}).
+ */
+final class IdBuffer {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int[] ids = new int[INITIAL_CAPACITY];
+	private int length;
+
+	/** Adds an index.
+	 * @param id The index. It should be greater than or equals to the last added index. If it is equal, it is ignored.
+	 */
+	void add(int id) {
+		// A tag may be repeated in a record
+		if (length==0 || ids[length-1]!=id) {
+			if (length==ids.length) {
+				ids = Arrays.copyOf(ids, ids.length*2);
+			}
+			ids[length++] = id;
+		}
+	}
+
+	/** Adds the indexes of this buffer to a bitmap.
+	 * @param bitmap The bitmap
+	 */
+	void addTo(Bitmap bitmap) {
+		bitmap.add(ids, length);
+	}
+}
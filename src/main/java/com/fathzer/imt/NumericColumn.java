@@ -0,0 +1,222 @@
+package com.fathzer.imt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fathzer.imt.util.IntIterator;
+
+/** A numeric column stored as a bit-sliced index.
+ * <br>The column has one bitmap per bit of the values (the slice <i>i</i> contains the records whose value has its bit <i>i</i> set),
+ * and a bitmap of the records that have a value.
+ * <br>Comparing the values with a constant costs a few bitmap operations per slice, whatever the number of distinct values is.
+ * <br>Values are positive or null longs. The number of slices grows with the highest value in the column.
+ */
+final class NumericColumn {
+	private final TagsTableFactory<?> factory;
+	private final Bitmap exists;
+	private final List<Bitmap> slices;
+
+	/** Constructor of an empty column.
+	 * @param factory The factory used to create the bitmaps.
+	 */
+	NumericColumn(TagsTableFactory<?> factory) {
+		this(factory, factory.create(), new ArrayList<Bitmap>());
+	}
+
+	/** Constructor.
+	 * @param factory The factory used to create the bitmaps.
+	 * @param exists The records that have a value
+	 * @param slices The slices, from the lowest bit to the highest one
+	 */
+	NumericColumn(TagsTableFactory<?> factory, Bitmap exists, List<Bitmap> slices) {
+		this.factory = factory;
+		this.exists = exists;
+		this.slices = slices;
+	}
+
+	/** Gets the records that have a value.
+	 * @return a bitmap. <b>Warning:</b> There are side effects between the returned instance and the column.
+	 */
+	Bitmap getExists() {
+		return exists;
+	}
+
+	/** Gets the slices of this column.
+	 * @return a list of bitmaps, from the lowest bit to the highest one.
+	 */
+	List<Bitmap> getSlices() {
+		return slices;
+	}
+
+	/** Sets the value of a record.
+	 * @param id The record's id
+	 * @param value The value
+	 */
+	void set(int id, long value) {
+		int bits = Long.SIZE - Long.numberOfLeadingZeros(value);
+		while (slices.size()<bits) {
+			slices.add(factory.create());
+		}
+		for (int i = 0; i < slices.size(); i++) {
+			if ((value & (1L<<i))!=0) {
+				slices.get(i).add(id);
+			} else {
+				slices.get(i).remove(id);
+			}
+		}
+		exists.add(id);
+	}
+
+	/** Removes the value of a record.
+	 * @param id The record's id
+	 * @return true if the record had a value.
+	 */
+	boolean remove(int id) {
+		if (!exists.contains(id)) {
+			return false;
+		}
+		exists.remove(id);
+		for (Bitmap slice : slices) {
+			slice.remove(id);
+		}
+		return true;
+	}
+
+	/** Removes the values of some records.
+	 * @param ids The records' ids
+	 * @return true if at least one of the records had a value.
+	 */
+	boolean remove(Bitmap ids) {
+		if (!exists.intersects(ids)) {
+			return false;
+		}
+		exists.andNot(ids);
+		for (Bitmap slice : slices) {
+			slice.andNot(ids);
+		}
+		return true;
+	}
+
+	/** Gets the value of a record.
+	 * @param id The record's id
+	 * @return The value or null if the record has no value.
+	 */
+	Long get(int id) {
+		if (!exists.contains(id)) {
+			return null;
+		}
+		long value = 0;
+		for (int i = 0; i < slices.size(); i++) {
+			if (slices.get(i).contains(id)) {
+				value |= 1L<<i;
+			}
+		}
+		return value;
+	}
+
+	/** Gets the records whose value is in a range.
+	 * @param min The minimum value (inclusive)
+	 * @param max The maximum value (inclusive)
+	 * @return a new mutable bitmap
+	 */
+	Bitmap getRange(long min, long max) {
+		if (max<0 || min>max || min>getMaxValue()) {
+			return factory.create();
+		}
+		Bitmap result = min<=0 ? exists.clone() : compare(min, true);
+		if (max<getMaxValue()) {
+			result.and(compare(max, false));
+		}
+		return result;
+	}
+
+	/** Gets the highest value the slices can store.
+	 * @return a positive or null long
+	 */
+	private long getMaxValue() {
+		return slices.size()==Long.SIZE-1 ? Long.MAX_VALUE : (1L<<slices.size())-1;
+	}
+
+	/** Compares the values with a constant that can be stored in the slices.
+	 * <br>The slices are processed from the highest bit to the lowest, while maintaining the records whose value's highest bits are equal to
+	 * the constant ones, and those whose value is already known to be strictly greater (or lower) than the constant.
+	 * @param constant The constant
+	 * @param greater true to get the records whose value is greater than or equal to the constant, false to get those lower than or equal to the constant.
+	 * @return a new mutable bitmap
+	 */
+	private Bitmap compare(long constant, boolean greater) {
+		Bitmap equals = exists.clone();
+		Bitmap result = factory.create();
+		for (int i = slices.size()-1; i>=0; i--) {
+			Bitmap slice = slices.get(i);
+			boolean bit = (constant & (1L<<i))!=0;
+			if (bit!=greater) {
+				// Records with a different bit are strictly greater (or lower) than the constant
+				Bitmap differ = equals.clone();
+				if (greater) {
+					differ.and(slice);
+				} else {
+					differ.andNot(slice);
+				}
+				result.or(differ);
+			}
+			if (bit) {
+				equals.and(slice);
+			} else {
+				equals.andNot(slice);
+			}
+		}
+		result.or(equals);
+		return result;
+	}
+
+	/** Gets the records of a set that have the highest (or lowest) values.
+	 * <br>The slices are processed from the highest bit to the lowest, while maintaining the records already known to be in the result,
+	 * and the candidates whose value's highest bits are the same. At each slice, the candidates with the best bit are added to the result
+	 * if they fit in it, otherwise the other candidates are discarded.
+	 * @param filter The set of records
+	 * @param k The maximum number of records to return
+	 * @param descending true to get the highest values, false to get the lowest ones
+	 * @return a new mutable bitmap. If many records have the same value and not all of them fit in the result, those with the lowest ids are returned.
+	 */
+	Bitmap getTop(Bitmap filter, int k, boolean descending) {
+		Bitmap result = factory.create();
+		Bitmap candidates = filter.clone();
+		candidates.and(exists);
+		int count = 0;
+		for (int i = slices.size()-1; i>=0 && count<k && count+candidates.getCardinality()>k; i--) {
+			Bitmap best = candidates.clone();
+			if (descending) {
+				best.and(slices.get(i));
+			} else {
+				best.andNot(slices.get(i));
+			}
+			int bestCount = best.getCardinality();
+			if (count+bestCount>k) {
+				candidates = best;
+			} else {
+				result.or(best);
+				count += bestCount;
+				candidates.andNot(best);
+			}
+		}
+		// Remaining candidates have the same value
+		IntIterator iterator = candidates.getIterator();
+		for (; count<k && iterator.hasNext(); count++) {
+			result.add(iterator.next());
+		}
+		return result;
+	}
+
+	/** Gets a copy of this column.
+	 * @param locked true to get a column with locked bitmaps
+	 * @return a new column
+	 */
+	NumericColumn copy(boolean locked) {
+		List<Bitmap> copies = new ArrayList<>(slices.size());
+		for (Bitmap slice : slices) {
+			copies.add(locked ? slice.getLocked() : slice.clone());
+		}
+		return new NumericColumn(factory, locked ? exists.getLocked() : exists.clone(), copies);
+	}
+}
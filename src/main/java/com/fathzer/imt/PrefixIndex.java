@@ -0,0 +1,90 @@
+package com.fathzer.imt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** A sorted dictionary of the tags of a table, used to find the tags that match a prefix.
+ * <br>A tag matches a prefix if its string representation starts with the prefix.
+ * <br>The index also caches the unions of the bitmaps of the tags that match a prefix. A cached union is discarded when one of its tags changes.
+ * <br>Like the table, this class supports concurrent reads, but not concurrent modifications.
+ * @param <T> The type of the tags.
+ */
+final class PrefixIndex<T> {
+	private final TreeMap<String, T> tags;
+	private final ConcurrentMap<String, Bitmap> unions;
+
+	PrefixIndex() {
+		this.tags = new TreeMap<>();
+		this.unions = new ConcurrentHashMap<>();
+	}
+
+	/** Adds a tag to this index.
+	 * @param tag The tag
+	 */
+	void add(T tag) {
+		tags.put(tag.toString(), tag);
+	}
+
+	/** Gets the tags that match a prefix.
+	 * @param prefix The prefix
+	 * @return a list of tags sorted by their string representation
+	 */
+	List<T> getTags(String prefix) {
+		List<T> result = new ArrayList<>();
+		for (Map.Entry<String, T> entry : tags.tailMap(prefix).entrySet()) {
+			if (!entry.getKey().startsWith(prefix)) {
+				break;
+			}
+			result.add(entry.getValue());
+		}
+		return result;
+	}
+
+	/** Gets the cached union of the tags that match a prefix.
+	 * @param prefix The prefix
+	 * @return a bitmap or null if the union is not cached.
+	 */
+	Bitmap getUnion(String prefix) {
+		return unions.get(prefix);
+	}
+
+	/** Caches the union of the tags that match a prefix.
+	 * @param prefix The prefix
+	 * @param union The union, it should be locked.
+	 */
+	void putUnion(String prefix, Bitmap union) {
+		unions.put(prefix, union);
+	}
+
+	/** Discards the cached unions a tag belongs to.
+	 * @param tag The tag whose records have changed (or a new tag).
+	 */
+	void tagChanged(T tag) {
+		if (!unions.isEmpty()) {
+			String key = tag.toString();
+			for (int i = 0; i <= key.length(); i++) {
+				unions.remove(key.substring(0, i));
+			}
+		}
+	}
+
+	/** Discards all the cached unions.
+	 */
+	void clearUnions() {
+		unions.clear();
+	}
+
+	/** Gets a copy of this index.
+	 * @return a new index
+	 */
+	PrefixIndex<T> copy() {
+		PrefixIndex<T> result = new PrefixIndex<>();
+		result.tags.putAll(tags);
+		result.unions.putAll(unions);
+		return result;
+	}
+}
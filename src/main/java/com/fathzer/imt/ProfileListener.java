@@ -0,0 +1,14 @@
+package com.fathzer.imt;
+
+/** A listener that receives the plans of sampled evaluations.
+ * <br>It is called in the thread that evaluated the expression, so it should return quickly.
+ * @author Jean-Marc Astesana
+ * @see com.fathzer.imt.implementation.AbstractLogicalEvaluator#setProfileListener(ProfileListener, int)
+ */
+public interface ProfileListener {
+	/** Receives the plan of an evaluated expression.
+	 * @param expression The expression
+	 * @param plan The evaluated plan
+	 */
+	void profiled(String expression, QueryPlan plan);
+}
@@ -0,0 +1,132 @@
+package com.fathzer.imt;
+
+import java.util.List;
+
+/** The evaluated plan of a logical expression, with statistics about the evaluation of each of its nodes.
+ * <br>The inputs of a node are its children, so their cardinalities are the node's input cardinalities.
+ * @author Jean-Marc Astesana
+ * @see TagsTable#explain(String, boolean)
+ */
+public class QueryPlan {
+	private final String operator;
+	private final List<QueryPlan> children;
+	private final int evaluations;
+	private final int cardinality;
+	private final long sizeInBytes;
+	private final long time;
+	private final boolean cached;
+	private final boolean complemented;
+
+	/** Constructor.
+	 * @param operator The node's operator, or its literal if the node has no children
+	 * @param children The plans of the node's children
+	 * @param evaluations The number of times the node was evaluated
+	 * @param cardinality The cardinality of the node's last result, or -1 if the node was not evaluated
+	 * @param sizeInBytes The memory size of the node's last result, or -1 if the node was not evaluated
+	 * @param time The time spent evaluating the node, including its children, in nanoseconds
+	 * @param cached true if the node's result was an existing bitmap
+	 * @param complemented true if the complement of the node's result was computed instead of the result itself
+	 */
+	public QueryPlan(String operator, List<QueryPlan> children, int evaluations, int cardinality, long sizeInBytes, long time, boolean cached, boolean complemented) {
+		this.operator = operator;
+		this.children = children;
+		this.evaluations = evaluations;
+		this.cardinality = cardinality;
+		this.sizeInBytes = sizeInBytes;
+		this.time = time;
+		this.cached = cached;
+		this.complemented = complemented;
+	}
+
+	/** Gets the node's operator.
+	 * @return a String, for instance <i>&amp;&amp;</i>, or the node's literal if it has no children.
+	 */
+	public String getOperator() {
+		return operator;
+	}
+
+	/** Gets the plans of the node's children.
+	 * @return a list, empty if the node has no children.
+	 */
+	public List<QueryPlan> getChildren() {
+		return children;
+	}
+
+	/** Gets the number of times the node was evaluated.
+	 * <br>A node may be skipped, for instance when an operand of an <i>and</i> is empty.
+	 * @return a positive or null integer
+	 */
+	public int getEvaluations() {
+		return evaluations;
+	}
+
+	/** Gets the cardinality of the node's result.
+	 * <br>If {@link #isComplemented()} is true, this is the cardinality of the complement. It may include deleted records.
+	 * @return a positive or null integer, or -1 if the node was not evaluated.
+	 */
+	public int getCardinality() {
+		return cardinality;
+	}
+
+	/** Gets the memory size of the node's result.
+	 * @return a number of bytes (see {@link Bitmap#getSizeInBytes()}), or -1 if the node was not evaluated.
+	 */
+	public long getSizeInBytes() {
+		return sizeInBytes;
+	}
+
+	/** Gets the time spent evaluating the node.
+	 * @return a number of nanoseconds. It includes the time spent evaluating the node's children.
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/** Tests whether the node's result was an existing bitmap.
+	 * <br>It is the case of tags, views, tags patterns unions and cached expressions results (the bitmap may have been copied).
+	 * @return true if no bitmap operation, other than a copy, was required to get the result.
+	 */
+	public boolean isCached() {
+		return cached;
+	}
+
+	/** Tests whether the complement of the node's result was computed instead of the result itself.
+	 * <br>Negations are usually evaluated this way: <i>a &amp;&amp; !b</i> is computed as a difference, without negating b.
+	 * @return a boolean
+	 */
+	public boolean isComplemented() {
+		return complemented;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		append(builder, 0);
+		return builder.toString();
+	}
+
+	private void append(StringBuilder builder, int depth) {
+		for (int i = 0; i < depth; i++) {
+			builder.append("  ");
+		}
+		builder.append(complemented ? "!(" + operator + ")" : operator);
+		if (evaluations==0) {
+			builder.append(" [not evaluated]");
+		} else {
+			builder.append(" [cardinality=").append(cardinality);
+			builder.append(", bytes=").append(sizeInBytes);
+			builder.append(", time=").append(time/1000).append("us");
+			if (evaluations>1) {
+				builder.append(", evaluations=").append(evaluations);
+			}
+			if (cached) {
+				builder.append(", cached");
+			}
+			builder.append(']');
+		}
+		for (QueryPlan child : children) {
+			builder.append('\n');
+			child.append(builder, depth+1);
+		}
+	}
+}
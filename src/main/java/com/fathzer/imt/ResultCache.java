@@ -0,0 +1,153 @@
+package com.fathzer.imt;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A cache of expression results.
+ * <br>Each tag has a version number that is incremented each time the records of the tag change.
+ * Table's records set (its size and deleted records) also has a version number.
+ * A cached result remembers the versions of what it depends on and is discarded when one of them has changed.
+ * <br>The cache size is bounded by the memory occupied by the cached bitmaps. When it is full, the least recently used results are discarded.
+ * <br>This class is thread safe.
+ * @param <T> The type of the tags.
+ */
+class ResultCache<T> {
+	private static final class Entry {
+		private final Bitmap result;
+		private final Object[] tags;
+		private final long[] versions;
+		private final long recordsVersion;
+		private final long sizeInBytes;
+		private final boolean checked;
+
+		Entry(Bitmap result, long sizeInBytes, boolean checked, Object[] tags, long[] versions, long recordsVersion) {
+			this.result = result;
+			this.sizeInBytes = sizeInBytes;
+			this.checked = checked;
+			this.tags = tags;
+			this.versions = versions;
+			this.recordsVersion = recordsVersion;
+		}
+	}
+
+	private final long maxSizeInBytes;
+	private final boolean monotoneResults;
+	private final LinkedHashMap<String, Entry> entries;
+	private final Map<T, Long> tagVersions;
+	private long recordsVersion;
+	private long sizeInBytes;
+
+	/** Constructor.
+	 * @param maxSizeInBytes The maximum number of bytes occupied by the cached bitmaps.
+	 * @param monotoneResults true if the results of monotone expressions only depend on their tags' versions.
+	 * It is false when deleting a record does not signal the changes of its tags (see {@link TagsTable#setLazyDeletion(boolean)}).
+	 */
+	ResultCache(long maxSizeInBytes, boolean monotoneResults) {
+		this.maxSizeInBytes = maxSizeInBytes;
+		this.monotoneResults = monotoneResults;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+		this.tagVersions = new HashMap<>();
+		this.recordsVersion = 0;
+		this.sizeInBytes = 0;
+	}
+
+	/** Gets the maximum number of bytes occupied by the cached bitmaps.
+	 * @return a long
+	 */
+	long getMaxSizeInBytes() {
+		return maxSizeInBytes;
+	}
+
+	/** Gets a cached result.
+	 * @param key The normalized expression.
+	 * @param failIfUnknown true if the result should have been computed with the unknown tags check enabled.
+	 * <br>A result computed without this check can't be returned, as the expression may refer to unknown tags.
+	 * @return The result or null if the expression is not in the cache, if its result has changed since it was cached,
+	 * or if <i>failIfUnknown</i> is true and the result was computed without checking the tags.
+	 */
+	synchronized Bitmap get(String key, boolean failIfUnknown) {
+		Entry entry = entries.get(key);
+		if (entry==null || (failIfUnknown && !entry.checked)) {
+			return null;
+		} else if (isValid(entry)) {
+			return entry.result;
+		} else {
+			remove(key);
+			return null;
+		}
+	}
+
+	private boolean isValid(Entry entry) {
+		if (entry.recordsVersion>=0 && entry.recordsVersion!=recordsVersion) {
+			return false;
+		}
+		for (int i = 0; i < entry.tags.length; i++) {
+			if (getVersion(entry.tags[i])!=entry.versions[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long getVersion(Object tag) {
+		Long version = tagVersions.get(tag);
+		return version==null ? 0 : version;
+	}
+
+	/** Puts a result in the cache.
+	 * <br>Results of expressions that contain tags patterns are not cached, the tags they depend on are not known in advance.
+	 * @param descriptor The descriptor of the expression
+	 * @param result The result of the expression. It should be locked.
+	 * @param failIfUnknown true if the result was computed with the unknown tags check enabled.
+	 */
+	synchronized void put(ExpressionDescriptor<T> descriptor, Bitmap result, boolean failIfUnknown) {
+		long resultSize = result.getSizeInBytes();
+		if (resultSize>maxSizeInBytes || !descriptor.getPrefixes().isEmpty()) {
+			return;
+		}
+		Object[] tags = descriptor.getTags().toArray();
+		long[] versions = new long[tags.length];
+		for (int i = 0; i < tags.length; i++) {
+			versions[i] = getVersion(tags[i]);
+		}
+		remove(descriptor.getKey());
+		Entry entry = new Entry(result, resultSize, failIfUnknown, tags, versions, descriptor.isMonotone() && monotoneResults ? -1 : recordsVersion);
+		entries.put(descriptor.getKey(), entry);
+		sizeInBytes += entry.sizeInBytes;
+		// Discard the least recently used entries until the cache fits in its maximum size
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (sizeInBytes>maxSizeInBytes) {
+			sizeInBytes -= iterator.next().sizeInBytes;
+			iterator.remove();
+		}
+	}
+
+	private void remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry!=null) {
+			sizeInBytes -= entry.sizeInBytes;
+		}
+	}
+
+	/** Signals that the records of a tag have changed.
+	 * @param tag The tag
+	 */
+	synchronized void tagChanged(T tag) {
+		tagVersions.put(tag, getVersion(tag)+1);
+	}
+
+	/** Signals that the table size or its deleted records have changed.
+	 */
+	synchronized void recordsChanged() {
+		recordsVersion++;
+	}
+
+	/** Gets the number of bytes occupied by the cached bitmaps.
+	 * @return a long
+	 */
+	synchronized long getSizeInBytes() {
+		return sizeInBytes;
+	}
+}
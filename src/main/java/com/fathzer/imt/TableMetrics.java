@@ -0,0 +1,183 @@
+package com.fathzer.imt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import com.fathzer.imt.util.LatencyHistogram;
+import com.fathzer.imt.util.StripedCounter;
+
+/** The metrics of a table.
+ * <br>The metrics are enabled by {@link TagsTable#enableMetrics()}. They can be registered in a JMX MBean server, for instance with
+ * <code>ManagementFactory.getPlatformMBeanServer().registerMBean(table.enableMetrics(), new ObjectName("com.fathzer.imt:type=TagsTable,name=myTable"))</code>.
+ * <br>Events are recorded with lock-free striped counters (see {@link StripedCounter}), so recording them does not slow down concurrent queries.
+ * The other attributes are computed from the table each time they are read.
+ * <br>This class is thread safe, but the attributes computed from the table may be inconsistent if the table is modified while they are read.
+ * @author Jean-Marc Astesana
+ */
+public class TableMetrics implements TableMetricsMBean {
+	private final TagsTable<?> table;
+	private final long start;
+	private final LatencyHistogram latencies;
+	private final StripedCounter mutations;
+	private final StripedCounter clones;
+	private final StripedCounter locks;
+
+	/** Constructor.
+	 * @param table The table
+	 */
+	TableMetrics(TagsTable<?> table) {
+		this.table = table;
+		this.start = System.nanoTime();
+		this.latencies = new LatencyHistogram();
+		this.mutations = new StripedCounter();
+		this.clones = new StripedCounter();
+		this.locks = new StripedCounter();
+	}
+
+	/** Records a query.
+	 * @param startTime The value of System.nanoTime() when the query started
+	 */
+	void queried(long startTime) {
+		latencies.record(System.nanoTime()-startTime);
+	}
+
+	/** Records a mutation. */
+	void mutated() {
+		mutations.increment();
+	}
+
+	/** Records a clone. */
+	void cloned() {
+		clones.increment();
+	}
+
+	/** Records a locked copy. */
+	void locked() {
+		locks.increment();
+	}
+
+	@Override
+	public long getQueryCount() {
+		return latencies.getCount();
+	}
+
+	@Override
+	public double getQueryRate() {
+		long elapsed = System.nanoTime()-start;
+		return elapsed<=0 ? 0 : getQueryCount()*1e9/elapsed;
+	}
+
+	@Override
+	public double getMeanLatency() {
+		return latencies.getMean();
+	}
+
+	@Override
+	public long getMedianLatency() {
+		return latencies.getPercentile(50);
+	}
+
+	@Override
+	public long getLatency99thPercentile() {
+		return latencies.getPercentile(99);
+	}
+
+	@Override
+	public long[] getLatencyHistogram() {
+		return latencies.getCounts();
+	}
+
+	@Override
+	public long getMutationCount() {
+		return mutations.get();
+	}
+
+	@Override
+	public long getCloneCount() {
+		return clones.get();
+	}
+
+	@Override
+	public long getLockCount() {
+		return locks.get();
+	}
+
+	@Override
+	public int getSize() {
+		return table.getSize();
+	}
+
+	@Override
+	public int getLogicalSize() {
+		return table.getLogicalSize();
+	}
+
+	@Override
+	public double getTombstoneRatio() {
+		int size = table.getSize();
+		return size==0 ? 0 : (double)(size-table.getLogicalSize())/size;
+	}
+
+	@Override
+	public int getTagsNumber() {
+		return table.getTagsNumber();
+	}
+
+	@Override
+	public long getTagsSizeInBytes() {
+		long result = 0;
+		for (Long size : getTagsSizes(table)) {
+			result += size;
+		}
+		return result;
+	}
+
+	@Override
+	public String[] getLargestTags(int count) {
+		final List<String> tags = new ArrayList<>();
+		final List<Long> sizes = getTagsSizes(table, tags);
+		List<Integer> indexes = new ArrayList<>(tags.size());
+		for (int i = 0; i < tags.size(); i++) {
+			indexes.add(i);
+		}
+		Collections.sort(indexes, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return sizes.get(o2).compareTo(sizes.get(o1));
+			}
+		});
+		String[] result = new String[Math.min(count, tags.size())];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = tags.get(indexes.get(i))+"="+sizes.get(indexes.get(i));
+		}
+		return result;
+	}
+
+	private static <T> List<Long> getTagsSizes(TagsTable<T> table) {
+		return getTagsSizes(table, null);
+	}
+
+	/** Gets the memory sizes of the tags of a table.
+	 * @param table The table
+	 * @param names A list where to store the string representations of the tags, or null if they are not needed
+	 * @return The sizes of the tags bitmaps, in the same order as <i>names</i>
+	 */
+	private static <T> List<Long> getTagsSizes(TagsTable<T> table, List<String> names) {
+		List<Long> result = new ArrayList<>(table.getTagsNumber());
+		Iterator<T> tags = table.getTags();
+		while (tags.hasNext()) {
+			T tag = tags.next();
+			Bitmap bitmap = table.getBitMapIndex(tag);
+			if (bitmap!=null) {
+				result.add(bitmap.getSizeInBytes());
+				if (names!=null) {
+					names.add(tag.toString());
+				}
+			}
+		}
+		return result;
+	}
+}
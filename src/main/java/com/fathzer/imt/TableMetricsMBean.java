@@ -0,0 +1,84 @@
+package com.fathzer.imt;
+
+/** The JMX management interface of {@link TableMetrics}.
+ * <br>Durations are in nanoseconds.
+ * @author Jean-Marc Astesana
+ */
+public interface TableMetricsMBean {
+	/** Gets the number of queries (evaluations and counts) since the metrics were enabled.
+	 * @return a long
+	 */
+	long getQueryCount();
+
+	/** Gets the mean number of queries per second since the metrics were enabled.
+	 * @return a double
+	 */
+	double getQueryRate();
+
+	/** Gets the mean query latency.
+	 * @return a number of nanoseconds
+	 */
+	double getMeanLatency();
+
+	/** Gets the median query latency.
+	 * @return a number of nanoseconds, known within a factor 2
+	 */
+	long getMedianLatency();
+
+	/** Gets the 99th percentile of the query latencies.
+	 * @return a number of nanoseconds, known within a factor 2
+	 */
+	long getLatency99thPercentile();
+
+	/** Gets the histogram of the query latencies.
+	 * @return the number of queries in each bucket (see {@link com.fathzer.imt.util.LatencyHistogram}).
+	 */
+	long[] getLatencyHistogram();
+
+	/** Gets the number of mutations (records, tags, values or views additions and removals) since the metrics were enabled.
+	 * @return a long
+	 */
+	long getMutationCount();
+
+	/** Gets the number of times the table was cloned since the metrics were enabled.
+	 * @return a long
+	 */
+	long getCloneCount();
+
+	/** Gets the number of locked copies of the table made since the metrics were enabled.
+	 * @return a long
+	 */
+	long getLockCount();
+
+	/** Gets the number of records of the table, including deleted records.
+	 * @return an int
+	 */
+	int getSize();
+
+	/** Gets the number of records of the table, excluding deleted records.
+	 * @return an int
+	 */
+	int getLogicalSize();
+
+	/** Gets the ratio of deleted records.
+	 * @return a double between 0 and 1
+	 */
+	double getTombstoneRatio();
+
+	/** Gets the number of tags of the table.
+	 * @return an int
+	 */
+	int getTagsNumber();
+
+	/** Gets the memory used by the bitmaps of the tags.
+	 * <br>This attribute is computed each time it is read, by summing the sizes of the bitmaps.
+	 * @return a number of bytes
+	 */
+	long getTagsSizeInBytes();
+
+	/** Gets the tags that use the most memory.
+	 * @param count The maximum number of tags to return
+	 * @return An array of strings, formatted as <i>tag=bytes</i>, sorted by decreasing memory size
+	 */
+	String[] getLargestTags(int count);
+}
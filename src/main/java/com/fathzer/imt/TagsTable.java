@@ -1,14 +1,26 @@
 package com.fathzer.imt;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.RecursiveAction;
 
+import com.fathzer.imt.util.IntBatchIterator;
 import com.fathzer.imt.util.IntIterator;
+import com.fathzer.imt.util.Pools;
 import com.fathzer.imt.util.UnexpectedCloneNotSupportedException;
 
 /** A table is a set of records. Each of them has contains some tags and are identified by a positive or null integer.
@@ -25,6 +37,11 @@ import com.fathzer.imt.util.UnexpectedCloneNotSupportedException;
  */
 public class TagsTable<T> implements Cloneable, Serializable {
 	private static final long serialVersionUID = 1L;
+	private static final int BATCH_SIZE = 4096;
+	/** The version of the serialized data written after the table's tags.
+	 * <br>Tables serialized before views, columns and lazy deletion existed have no version, their data ends after the tags.
+	 */
+	private static final int FORMAT_VERSION = 1;
 
 	private final class TagsIterator implements Iterator<T> {
 		private T next;
@@ -69,12 +86,135 @@ public class TagsTable<T> implements Cloneable, Serializable {
 		}
 	}
 
+	/** A task that computes the cardinalities of the intersections of a bitmap with other ones.
+	 * <br>The task is split in halves until the number of bitmaps is small enough.
+	 */
+	private static final class CardinalitiesTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 16;
+
+		private final Bitmap filter;
+		private final Bitmap[] bitmaps;
+		private final int[] result;
+		private final int from;
+		private final int to;
+
+		CardinalitiesTask(Bitmap filter, Bitmap[] bitmaps, int[] result, int from, int to) {
+			this.filter = filter;
+			this.bitmaps = bitmaps;
+			this.result = result;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to-from<=THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					result[i] = bitmaps[i]==null ? 0 : filter.andCardinality(bitmaps[i]);
+				}
+			} else {
+				int middle = (from+to) >>> 1;
+				invokeAll(new CardinalitiesTask(filter, bitmaps, result, from, middle), new CardinalitiesTask(filter, bitmaps, result, middle, to));
+			}
+		}
+	}
+
+	/** A task that removes some records from bitmaps.
+	 * <br>The task is split in halves until the number of bitmaps is small enough.
+	 */
+	private static final class CleanupTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 16;
+
+		private final Bitmap records;
+		private final Bitmap[] bitmaps;
+		private final int from;
+		private final int to;
+
+		CleanupTask(Bitmap records, Bitmap[] bitmaps, int from, int to) {
+			this.records = records;
+			this.bitmaps = bitmaps;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to-from<=THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					if (bitmaps[i].intersects(records)) {
+						bitmaps[i].andNot(records);
+					}
+				}
+			} else {
+				int middle = (from+to) >>> 1;
+				invokeAll(new CleanupTask(records, bitmaps, from, middle), new CleanupTask(records, bitmaps, middle, to));
+			}
+		}
+	}
+
+	/** A task that renumbers the records of bitmaps.
+	 * <br>The task is split in halves until the number of bitmaps is small enough.
+	 */
+	private static final class RemapTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 16;
+
+		private final TagsTableFactory<?> factory;
+		private final int[] mapping;
+		private final Bitmap[] bitmaps;
+		private final int from;
+		private final int to;
+
+		RemapTask(TagsTableFactory<?> factory, int[] mapping, Bitmap[] bitmaps, int from, int to) {
+			this.factory = factory;
+			this.mapping = mapping;
+			this.bitmaps = bitmaps;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to-from<=THRESHOLD) {
+				int[] buffer = new int[BATCH_SIZE];
+				for (int i = from; i < to; i++) {
+					Bitmap result = factory.create();
+					IntBatchIterator iterator = bitmaps[i].getBatchIterator();
+					for (int count = iterator.nextBatch(buffer); count>0; count = iterator.nextBatch(buffer)) {
+						// The mapping is increasing, so the new indexes remain sorted
+						int length = 0;
+						for (int j = 0; j < count; j++) {
+							int id = buffer[j]<mapping.length ? mapping[buffer[j]] : -1;
+							if (id>=0) {
+								buffer[length++] = id;
+							}
+						}
+						result.add(buffer, length);
+					}
+					result.trim();
+					bitmaps[i] = result;
+				}
+			} else {
+				int middle = (from+to) >>> 1;
+				invokeAll(new RemapTask(factory, mapping, bitmaps, from, middle), new RemapTask(factory, mapping, bitmaps, middle, to));
+			}
+		}
+	}
+
 	private int size;
 	private int logicalSize;
 	private TagsTableFactory<T> factory;
 	private Bitmap deletedRecords;
+	private Bitmap tombstones;
 	private BitmapMap<T> tagToBitmap;
 	private boolean isLocked;
+	private ResultCache<T> resultCache;
+	private Map<String, View<T>> views;
+	private PrefixIndex<T> prefixIndex;
+	private Map<T, NumericColumn> columns;
+	private TableMetrics metrics;
 	
 	/** Creates a new empty table.
 	 * @param factory the factory used to build the table.
@@ -86,8 +226,27 @@ public class TagsTable<T> implements Cloneable, Serializable {
 		this.isLocked = false;
 		this.logicalSize = 0;
 		this.size = 0;
+		this.views = new LinkedHashMap<>();
+		this.prefixIndex = new PrefixIndex<>();
+		this.columns = new LinkedHashMap<>();
 	}
-	
+
+	/** Creates a table from already built bitmaps.
+	 * @param factory the factory used to build the table.
+	 * @param tagToBitmap The bitmaps of the tags. No index can be greater than or equals to size.
+	 * @param size The number of records (none of them is deleted).
+	 * @see BulkLoader
+	 */
+	TagsTable(final TagsTableFactory<T> factory, BitmapMap<T> tagToBitmap, int size) {
+		this(factory);
+		this.tagToBitmap = tagToBitmap;
+		this.logicalSize = size;
+		this.size = size;
+		for (T tag : tagToBitmap.keySet()) {
+			prefixIndex.add(tag);
+		}
+	}
+
 	/** Adds some tags to this table.
 	 * <br>Existing records are updated according to second arguments
 	 * @param tags the tags to add to the table
@@ -113,7 +272,10 @@ public class TagsTable<T> implements Cloneable, Serializable {
 				}
 			}
 			tagToBitmap.put(tag, bitmap);
+			prefixIndex.add(tag);
+			tagChanged(tag);
 		}
+		refreshViews(new HashSet<>(tags));
 	}
 	
 	/** Adds a record to the table.
@@ -125,10 +287,11 @@ public class TagsTable<T> implements Cloneable, Serializable {
 	 */
 	public int addRecord(Iterator<T> record, boolean failIfUnknown) {
 		check();
+		recordsChanged();
 		int index;
-		if (logicalSize<size) {
+		index = logicalSize<size ? getFreeRecord() : -1;
+		if (index>=0) {
 			// If table contains some deleted records, replace deleted record by new one.
-			index = deletedRecords.getIterator().next();
 			deletedRecords.remove(index);
 		} else {
 			// Add record at the end of the table
@@ -144,21 +307,144 @@ public class TagsTable<T> implements Cloneable, Serializable {
 				} else {
 					bitmap = this.factory.create();
 					tagToBitmap.put(tag, bitmap);
+					prefixIndex.add(tag);
 				}
 			}
+			clean(bitmap);
 			bitmap.add(index);
+			tagChanged(tag);
 		}
 		logicalSize++;
+		updateViews(index, null);
 		return index;
 	}
 
+	/** Gets the first deleted record that can be replaced by a new one.
+	 * @return a record index or -1 if all the deleted records are tombstones.
+	 */
+	private int getFreeRecord() {
+		IntIterator deleted = deletedRecords.getIterator();
+		while (deleted.hasNext()) {
+			int index = deleted.next();
+			if (!isTombstone(index)) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	private boolean isTombstone(int index) {
+		return tombstones!=null && tombstones.contains(index);
+	}
+
+	/** Removes the tombstones from a bitmap that is about to be modified.
+	 * @param bitmap a tag's bitmap
+	 */
+	private void clean(Bitmap bitmap) {
+		if (tombstones!=null && !tombstones.isEmpty() && bitmap.intersects(tombstones)) {
+			bitmap.andNot(tombstones);
+		}
+	}
+
+	/** Adds many records to the table.
+	 * <br>The result is the same as calling {@link #addRecord(Iterator, boolean)} for each record, but the updates
+	 * are grouped by tag, and each tag's bitmap is updated at once (see {@link Bitmap#add(int[], int)}).
+	 * <br>If a tag is unknown and <i>failIfUnknown</i> is true, the table is not modified.
+	 * @param records iterators on the tags contained in the records
+	 * @param failIfUnknown true if the method should fail if a tag is unknown, false if unknown tags should be added automatically.
+	 * @return the indexes of the added records in the table, in the same order as <i>records</i>.
+	 * @throws UnknownTagException if a tag is unknown and <i>failIfUnknown</i> is true.
+	 * @throws IllegalStateException if this is locked
+	 */
+	public int[] addRecords(List<Iterator<T>> records, boolean failIfUnknown) {
+		check();
+		// Deleted records are replaced first, then records are added at the end of the table, so indexes are in ascending order
+		int[] indexes = new int[records.size()];
+		int reused = 0;
+		if (logicalSize<size) {
+			IntIterator deleted = deletedRecords.getIterator();
+			while (reused<indexes.length && deleted.hasNext()) {
+				int index = deleted.next();
+				if (!isTombstone(index)) {
+					indexes[reused++] = index;
+				}
+			}
+		}
+		for (int i = reused; i < indexes.length; i++) {
+			indexes[i] = size+i-reused;
+		}
+		Map<T, IdBuffer> buffers = new LinkedHashMap<>();
+		for (int i = 0; i < indexes.length; i++) {
+			Iterator<T> record = records.get(i);
+			while (record.hasNext()) {
+				T tag = record.next();
+				IdBuffer buffer = buffers.get(tag);
+				if (buffer==null) {
+					if (failIfUnknown && !tagToBitmap.containsKey(tag)) {
+						throw new UnknownTagException(tag.toString());
+					}
+					buffer = new IdBuffer();
+					buffers.put(tag, buffer);
+				}
+				buffer.add(indexes[i]);
+			}
+		}
+		if (indexes.length==0) {
+			return indexes;
+		}
+		recordsChanged();
+		if (reused>0) {
+			Bitmap replaced = factory.create();
+			replaced.add(indexes, reused);
+			deletedRecords.andNot(replaced);
+		}
+		size += indexes.length-reused;
+		for (Map.Entry<T, IdBuffer> entry : buffers.entrySet()) {
+			T tag = entry.getKey();
+			Bitmap bitmap = tagToBitmap.get(tag);
+			if (bitmap==null) {
+				bitmap = this.factory.create();
+				tagToBitmap.put(tag, bitmap);
+				prefixIndex.add(tag);
+			}
+			clean(bitmap);
+			entry.getValue().addTo(bitmap);
+			tagChanged(tag);
+		}
+		logicalSize += indexes.length;
+		for (int index : indexes) {
+			updateViews(index, null);
+		}
+		return indexes;
+	}
+
+	/** Checks that this table can be modified, and records the modification in the metrics.
+	 * @throws IllegalStateException if this is locked
+	 */
 	private void check() {
 		if (isLocked()) {
 			throw new IllegalStateException();
 		}
+		if (metrics!=null) {
+			metrics.mutated();
+		}
+	}
+	
+	private void tagChanged(T tag) {
+		prefixIndex.tagChanged(tag);
+		if (resultCache!=null) {
+			resultCache.tagChanged(tag);
+		}
+	}
+	
+	private void recordsChanged() {
+		if (resultCache!=null) {
+			resultCache.recordsChanged();
+		}
 	}
 	
 	/** Deletes a record.
+	 * <br>If lazy deletion is enabled (see {@link #setLazyDeletion(boolean)}), the record is only marked as deleted, its cost does not depend on the number of tags.
 	 * @param index The record index (returned by method {@link #addRecord(Iterator, boolean)} or by a iterator on a {@link Bitmap}
 	 * @throws IllegalArgumentException if index is negative or greater than or equals to size.
 	 */
@@ -167,15 +453,104 @@ public class TagsTable<T> implements Cloneable, Serializable {
 		if (index>=size || index<0) {
 			throw new IllegalArgumentException();
 		}
-		for (Bitmap bitmap:tagToBitmap.values()) {
-			bitmap.remove(index);
+		if (tombstones!=null) {
+			recordsChanged();
+			removeValues(index);
+			logicalSize--;
+			deletedRecords.add(index);
+			tombstones.add(index);
+			updateViews(index, null);
+			return;
+		}
+		if (resultCache==null) {
+			for (Bitmap bitmap:tagToBitmap.values()) {
+				bitmap.remove(index);
+			}
+		} else {
+			for (T tag:tagToBitmap.keySet()) {
+				Bitmap bitmap = tagToBitmap.get(tag);
+				if (bitmap.contains(index)) {
+					bitmap.remove(index);
+					resultCache.tagChanged(tag);
+				}
+			}
+			resultCache.recordsChanged();
 		}
+		removeValues(index);
+		prefixIndex.clearUnions();
 		logicalSize--;
 		if (index==size-1) {
 			size--;
 		} else {
 			deletedRecords.add(index);
 		}
+		updateViews(index, null);
+	}
+	
+	/** Removes the values of a record from the numeric columns.
+	 * @param index The record index
+	 */
+	private void removeValues(int index) {
+		for (Map.Entry<T, NumericColumn> entry : columns.entrySet()) {
+			if (entry.getValue().remove(index) && resultCache!=null) {
+				resultCache.tagChanged(entry.getKey());
+			}
+		}
+	}
+
+	/** Deletes many records.
+	 * <br>The result is the same as calling {@link #deleteRecord(int)} for each record, in descending order,
+	 * but the records are removed from each bitmap at once.
+	 * <br>Records that are already deleted are ignored.
+	 * @param indexes The records indexes
+	 * @throws IllegalArgumentException if an index is greater than or equals to size.
+	 * @throws IllegalStateException if this is locked
+	 */
+	public void deleteRecords(Bitmap indexes) {
+		check();
+		if (indexes.isEmpty()) {
+			return;
+		}
+		Bitmap deleted = indexes.getRange(0, size);
+		if (deleted.getCardinality()!=indexes.getCardinality()) {
+			throw new IllegalArgumentException();
+		}
+		deleted.andNot(deletedRecords);
+		if (deleted.isEmpty()) {
+			return;
+		}
+		recordsChanged();
+		if (tombstones==null) {
+			for (T tag : tagToBitmap.keySet()) {
+				Bitmap bitmap = tagToBitmap.get(tag);
+				if (bitmap.intersects(deleted)) {
+					bitmap.andNot(deleted);
+					tagChanged(tag);
+				}
+			}
+			prefixIndex.clearUnions();
+		} else {
+			tombstones.or(deleted);
+		}
+		for (Map.Entry<T, NumericColumn> entry : columns.entrySet()) {
+			if (entry.getValue().remove(deleted)) {
+				tagChanged(entry.getKey());
+			}
+		}
+		for (View<T> view : views.values()) {
+			// Deleted records match no view
+			if (view.getBitmap().intersects(deleted)) {
+				view.getBitmap().andNot(deleted);
+				tagChanged(view.getTag());
+			}
+		}
+		logicalSize -= deleted.getCardinality();
+		// The records at the end of the table are removed from the table, unless they are tombstones
+		while (tombstones==null && size>0 && deleted.contains(size-1)) {
+			deleted.remove(size-1);
+			size--;
+		}
+		deletedRecords.or(deleted);
 	}
 	
 	/** Gets the number of records contained in the table, including deleted records.
@@ -202,7 +577,42 @@ public class TagsTable<T> implements Cloneable, Serializable {
 	 * @throws UnknownTagException if the expression refers to an unknown tag and <i>failIfUnknown</i> is true. Otherwise unknown tags are considered false.
 	 */
 	public Bitmap evaluate(String logicalExpr, boolean failIfUnknown) {
+		return doEvaluate(logicalExpr, failIfUnknown, false);
+	}
+
+	/** Gets the set of records that verify a logical expression using many threads.
+	 * <br>The result is the same as {@link #evaluate(String, boolean)}, but the records are split in ranges evaluated concurrently
+	 * (see {@link ExtendedEvaluator#evaluateParallel(TagsTable, String, boolean)}). It is faster than {@link #evaluate(String, boolean)} on huge tables.
+	 * If the table's evaluator is not an {@link ExtendedEvaluator}, the expression is evaluated by a single thread.
+	 * @param logicalExpr a logical expression.
+	 * @param failIfUnknown true if the method should fail if a tag is unknown, false if unknown tags should be assumed as included in no record.
+	 * @return a bitmap. Each set index in the bitmap is the index of a record that satisfies the logical expression 
+	 * @throws UnknownTagException if the expression refers to an unknown tag and <i>failIfUnknown</i> is true. Otherwise unknown tags are considered false.
+	 */
+	public Bitmap evaluateParallel(String logicalExpr, boolean failIfUnknown) {
+		return doEvaluate(logicalExpr, failIfUnknown, true);
+	}
+
+	private Bitmap doEvaluate(String logicalExpr, boolean failIfUnknown, boolean parallel) {
+		long start = metrics==null ? 0 : System.nanoTime();
+		Bitmap result = getResult(logicalExpr, failIfUnknown, parallel);
+		if (metrics!=null) {
+			metrics.queried(start);
+		}
+		return result;
+	}
+
+	private Bitmap getResult(String logicalExpr, boolean failIfUnknown, boolean parallel) {
 		logicalExpr = logicalExpr.trim();
+		ExpressionDescriptor<T> descriptor = null;
+		ExtendedEvaluator<T> extended = getExtendedEvaluator();
+		if (resultCache!=null && extended!=null && !logicalExpr.isEmpty()) {
+			descriptor = extended.describe(logicalExpr);
+			Bitmap cached = resultCache.get(descriptor.getKey(), failIfUnknown);
+			if (cached!=null) {
+				return cached;
+			}
+		}
 		Bitmap bitmap;
 		if (logicalExpr.isEmpty()) {
 			bitmap = factory.create();
@@ -210,23 +620,617 @@ public class TagsTable<T> implements Cloneable, Serializable {
 			if (logicalSize!=size) {
 				bitmap.andNot(deletedRecords);
 			}
+			bitmap.lock();
 		} else {
-			bitmap = factory.getEvaluator().evaluate(this, logicalExpr, failIfUnknown);
-			if (logicalSize!=size) {
-				// If bitmap is not locked, but the table is, it means the bitmap was create by the evaluator itself
-				// So, it is not useful to clone it.
-				if (bitmap.isLocked() || !isLocked()) {
-					bitmap = bitmap.clone();
+			bitmap = toResult(parallel && extended!=null ? extended.evaluateParallel(this, logicalExpr, failIfUnknown) : factory.getEvaluator().evaluate(this, logicalExpr, failIfUnknown));
+		}
+		if (descriptor!=null) {
+			resultCache.put(descriptor, bitmap, failIfUnknown);
+		}
+		return bitmap;
+	}
+	
+	/** Evaluates a logical expression and reports statistics about the evaluation of each node of its plan.
+	 * <br>If the expression's result is in the result cache, the plan has a single cached node.
+	 * @param logicalExpr a logical expression.
+	 * <br>Supported operators depends on the {@link Evaluator} built by the {@link TagsTableFactory} used to create this table.
+	 * @param failIfUnknown true if the method should fail if a tag is unknown, false if unknown tags should be assumed as included in no record.
+	 * @return The evaluated plan (see {@link ExtendedEvaluator#explain(TagsTable, String, boolean)}).
+	 * If the table's evaluator is not an {@link ExtendedEvaluator}, the plan has a single node.
+	 * @throws UnknownTagException if the expression refers to an unknown tag and <i>failIfUnknown</i> is true. Otherwise unknown tags are considered false.
+	 */
+	public QueryPlan explain(String logicalExpr, boolean failIfUnknown) {
+		logicalExpr = logicalExpr.trim();
+		ExtendedEvaluator<T> extended = getExtendedEvaluator();
+		if (logicalExpr.isEmpty() || (resultCache!=null && extended!=null)) {
+			long start = System.nanoTime();
+			Bitmap cached = logicalExpr.isEmpty() ? evaluate(logicalExpr, failIfUnknown) : resultCache.get(extended.describe(logicalExpr).getKey(), failIfUnknown);
+			if (cached!=null) {
+				return new QueryPlan(logicalExpr, Collections.<QueryPlan>emptyList(), 1, cached.getCardinality(), cached.getSizeInBytes(),
+						System.nanoTime()-start, !logicalExpr.isEmpty(), false);
+			}
+		}
+		if (extended==null) {
+			long start = System.nanoTime();
+			Bitmap bitmap = factory.getEvaluator().evaluate(this, logicalExpr, failIfUnknown);
+			return new QueryPlan(logicalExpr, Collections.<QueryPlan>emptyList(), 1, bitmap.getCardinality(), bitmap.getSizeInBytes(),
+					System.nanoTime()-start, false, false);
+		}
+		return extended.explain(this, logicalExpr, failIfUnknown);
+	}
+
+	/** Converts a bitmap returned by the evaluator to a result.
+	 * @param bitmap The bitmap returned by the evaluator. It already excludes the deleted records.
+	 * @return a locked bitmap
+	 */
+	private Bitmap toResult(Bitmap bitmap) {
+		// An unlocked bitmap returned by the evaluator is owned by this table, there's no need to copy it
+		if (!bitmap.isLocked()) {
+			bitmap.lock();
+		}
+		return bitmap;
+	}
+
+	/** Gets the evaluator of the table's factory if it supports the optimized queries.
+	 * @return an evaluator or null if the factory's evaluator is not an {@link ExtendedEvaluator}.
+	 */
+	private ExtendedEvaluator<T> getExtendedEvaluator() {
+		Evaluator<T> evaluator = factory.getEvaluator();
+		return evaluator instanceof ExtendedEvaluator ? (ExtendedEvaluator<T>) evaluator : null;
+	}
+	
+	/** Gets the sets of records that verify many logical expressions.
+	 * <br>The result is the same as calling {@link #evaluate(String, boolean)} for each expression, but
+	 * common subexpressions may be evaluated only once, and expressions may be evaluated concurrently.
+	 * @param logicalExprs a list of logical expressions.
+	 * <br>Supported operators depends on the {@link Evaluator} built by the {@link TagsTableFactory} used to create this table.
+	 * @param failIfUnknown true if the method should fail if a tag is unknown, false if unknown tags should be assumed as included in no record.
+	 * @return a list of bitmaps, in the same order as the expressions.
+	 * @throws UnknownTagException if an expression refers to an unknown tag and <i>failIfUnknown</i> is true. Otherwise unknown tags are considered false.
+	 */
+	public List<Bitmap> evaluateAll(List<String> logicalExprs, boolean failIfUnknown) {
+		long start = metrics==null ? 0 : System.nanoTime();
+		List<Bitmap> result = new ArrayList<>(Collections.<Bitmap>nCopies(logicalExprs.size(), null));
+		// Expressions that are not already available
+		List<String> expressions = new ArrayList<>(logicalExprs.size());
+		List<Integer> indexes = new ArrayList<>(logicalExprs.size());
+		List<ExpressionDescriptor<T>> descriptors = new ArrayList<>(logicalExprs.size());
+		ExtendedEvaluator<T> extended = getExtendedEvaluator();
+		for (int i = 0; i < logicalExprs.size(); i++) {
+			String logicalExpr = logicalExprs.get(i).trim();
+			Bitmap bitmap = null;
+			ExpressionDescriptor<T> descriptor = null;
+			if (logicalExpr.isEmpty()) {
+				bitmap = evaluate(logicalExpr, failIfUnknown);
+			} else if (resultCache!=null && extended!=null) {
+				descriptor = extended.describe(logicalExpr);
+				bitmap = resultCache.get(descriptor.getKey(), failIfUnknown);
+			}
+			if (bitmap==null) {
+				expressions.add(logicalExpr);
+				indexes.add(i);
+				descriptors.add(descriptor);
+			} else {
+				result.set(i, bitmap);
+			}
+		}
+		if (!expressions.isEmpty()) {
+			List<Bitmap> bitmaps;
+			if (extended!=null) {
+				bitmaps = extended.evaluateAll(this, expressions, failIfUnknown);
+			} else {
+				bitmaps = new ArrayList<>(expressions.size());
+				for (String expression : expressions) {
+					bitmaps.add(factory.getEvaluator().evaluate(this, expression, failIfUnknown));
 				}
-				bitmap.andNot(deletedRecords);
+			}
+			for (int i = 0; i < bitmaps.size(); i++) {
+				Bitmap bitmap = toResult(bitmaps.get(i));
+				if (descriptors.get(i)!=null) {
+					resultCache.put(descriptors.get(i), bitmap, failIfUnknown);
+				}
+				result.set(indexes.get(i), bitmap);
 			}
 		}
-		return bitmap.getLocked();
+		if (metrics!=null) {
+			metrics.queried(start);
+		}
+		return result;
+	}
+	
+	/** Gets the number of records that verify a logical expression.
+	 * <br>This method returns the same value as evaluate(logicalExpr, failIfUnknown).getCardinality(), but it is usually faster
+	 * because the result bitmap is not fully built.
+	 * @param logicalExpr a logical expression.
+	 * <br>Supported operators depends on the {@link Evaluator} built by the {@link TagsTableFactory} used to create this table.
+	 * @param failIfUnknown true if the method should fail if a tag is unknown, false if unknown tags should be assumed as included in no record.
+	 * @return a positive or null integer
+	 * @throws UnknownTagException if the expression refers to an unknown tag and <i>failIfUnknown</i> is true. Otherwise unknown tags are considered false.
+	 */
+	public int count(String logicalExpr, boolean failIfUnknown) {
+		long start = metrics==null ? 0 : System.nanoTime();
+		int result = doCount(logicalExpr.trim(), failIfUnknown);
+		if (metrics!=null) {
+			metrics.queried(start);
+		}
+		return result;
+	}
+
+	private int doCount(String logicalExpr, boolean failIfUnknown) {
+		if (logicalExpr.isEmpty()) {
+			return getLogicalSize();
+		} else {
+			ExtendedEvaluator<T> extended = getExtendedEvaluator();
+			if (extended==null) {
+				return factory.getEvaluator().evaluate(this, logicalExpr, failIfUnknown).getCardinality();
+			}
+			if (resultCache!=null) {
+				Bitmap cached = resultCache.get(extended.describe(logicalExpr).getKey(), failIfUnknown);
+				if (cached!=null) {
+					return cached.getCardinality();
+				}
+			}
+			return extended.count(this, logicalExpr, failIfUnknown);
+		}
+	}
+	
+	/** Gets the first records that verify a logical expression.
+	 * <br>Records are searched in ascending order and the search stops as soon as <i>limit</i> records are found,
+	 * so this method is much faster than {@link #evaluate(String, boolean)} when only a few records are required.
+	 * @param logicalExpr a logical expression.
+	 * <br>Supported operators depends on the {@link Evaluator} built by the {@link TagsTableFactory} used to create this table.
+	 * @param failIfUnknown true if the method should fail if a tag is unknown, false if unknown tags should be assumed as included in no record.
+	 * @param limit The maximum number of records to return.
+	 * @return a bitmap that contains the <i>limit</i> records with the lowest indexes that satisfy the logical expression
+	 * (or all of them if less than <i>limit</i> records satisfy the expression).
+	 * @throws UnknownTagException if the expression refers to an unknown tag and <i>failIfUnknown</i> is true. Otherwise unknown tags are considered false.
+	 * @throws IllegalArgumentException if limit is negative.
+	 */
+	public Bitmap evaluate(String logicalExpr, boolean failIfUnknown, int limit) {
+		if (limit<0) {
+			throw new IllegalArgumentException();
+		}
+		logicalExpr = logicalExpr.trim();
+		Bitmap bitmap = factory.create();
+		if (logicalExpr.isEmpty()) {
+			for (int id = 0; id < size && limit>0; id++) {
+				if (!deletedRecords.contains(id)) {
+					bitmap.add(id);
+					limit--;
+				}
+			}
+		} else {
+			IntIterator iterator = getIterator(logicalExpr, failIfUnknown);
+			for (; limit>0 && iterator.hasNext(); limit--) {
+				bitmap.add(iterator.next());
+			}
+		}
+		bitmap.lock();
+		return bitmap;
+	}
+	
+	/** Gets the records that verify a logical expression and have the highest (or lowest) values in a numeric column.
+	 * <br>The records are found with bitmap operations on the column's bit-sliced index (a few per bit of the column's highest value),
+	 * the values of the matching records are never read. Records that have no value in the column are ignored.
+	 * <br>The returned records are not sorted by value, {@link #getValue(int, Object)} can be used to sort them.
+	 * @param logicalExpr a logical expression.
+	 * <br>Supported operators depends on the {@link Evaluator} built by the {@link TagsTableFactory} used to create this table.
+	 * @param failIfUnknown true if the method should fail if a tag or the column is unknown, false if unknown tags should be assumed as included in no record.
+	 * @param column The numeric column
+	 * @param k The maximum number of records to return.
+	 * @param descending true to get the records with the highest values, false to get those with the lowest values.
+	 * @return a locked bitmap that contains the <i>k</i> matching records with the highest (or lowest) values, or all the matching records that have a value if there are less than <i>k</i>.
+	 * If many records have the same value and not all of them fit in the result, those with the lowest indexes are returned.
+	 * @throws UnknownTagException if the expression refers to an unknown tag, or if the column is unknown, and <i>failIfUnknown</i> is true.
+	 * @throws IllegalArgumentException if k is negative.
+	 * @see #setValue(int, Object, long, boolean)
+	 */
+	public Bitmap topK(String logicalExpr, boolean failIfUnknown, T column, int k, boolean descending) {
+		if (k<0) {
+			throw new IllegalArgumentException();
+		}
+		NumericColumn numericColumn = columns.get(column);
+		if (numericColumn==null && failIfUnknown) {
+			throw new UnknownTagException(column.toString());
+		}
+		Bitmap filter = evaluate(logicalExpr, failIfUnknown);
+		Bitmap bitmap = numericColumn==null || k==0 ? factory.create() : numericColumn.getTop(filter, k, descending);
+		bitmap.lock();
+		return bitmap;
+	}
+
+	/** Tests whether at least one record verifies a logical expression.
+	 * <br>The search stops as soon as a record is found.
+	 * @param logicalExpr a logical expression.
+	 * <br>Supported operators depends on the {@link Evaluator} built by the {@link TagsTableFactory} used to create this table.
+	 * @param failIfUnknown true if the method should fail if a tag is unknown, false if unknown tags should be assumed as included in no record.
+	 * @return true if a record satisfies the logical expression.
+	 * @throws UnknownTagException if the expression refers to an unknown tag and <i>failIfUnknown</i> is true. Otherwise unknown tags are considered false.
+	 */
+	public boolean exists(String logicalExpr, boolean failIfUnknown) {
+		logicalExpr = logicalExpr.trim();
+		if (logicalExpr.isEmpty()) {
+			return getLogicalSize()>0;
+		} else {
+			return getIterator(logicalExpr, failIfUnknown).hasNext();
+		}
+	}
+
+	private IntIterator getIterator(String logicalExpr, boolean failIfUnknown) {
+		ExtendedEvaluator<T> extended = getExtendedEvaluator();
+		return extended==null ? factory.getEvaluator().evaluate(this, logicalExpr, failIfUnknown).getIterator() : extended.getIterator(this, logicalExpr, failIfUnknown);
+	}
+
+	/** Counts, for some tags, the records that verify a logical expression and contain the tag.
+	 * <br>The result is the same as calling {@link #count(String, boolean)} with <i>"logicalExpr &amp;&amp; tag"</i> for every tag,
+	 * but the expression is evaluated only once and the counts are computed concurrently on the {@link Pools#getForkJoinPool() shared fork/join pool}.
+	 * @param logicalExpr a logical expression (typically, the current filter of a faceted search).
+	 * @param tags The tags to count (typically, the facets).
+	 * @param failIfUnknown true if the method should fail if a tag, in the expression or in <i>tags</i>, is unknown, false if unknown tags should be assumed as included in no record.
+	 * @return a map from the tags to their counts, in the <i>tags</i> iteration order.
+	 * @throws UnknownTagException if the expression or <i>tags</i> refers to an unknown tag and <i>failIfUnknown</i> is true.
+	 */
+	public Map<T, Integer> facetCounts(String logicalExpr, Collection<T> tags, boolean failIfUnknown) {
+		Bitmap filter = evaluate(logicalExpr, failIfUnknown);
+		Bitmap[] bitmaps = new Bitmap[tags.size()];
+		int i = 0;
+		for (T tag : tags) {
+			bitmaps[i] = tagToBitmap.get(tag);
+			if (bitmaps[i]==null && failIfUnknown) {
+				throw new UnknownTagException(tag.toString());
+			}
+			i++;
+		}
+		int[] counts = new int[bitmaps.length];
+		if (!filter.isEmpty()) {
+			Pools.getForkJoinPool().invoke(new CardinalitiesTask(filter, bitmaps, counts, 0, bitmaps.length));
+		}
+		Map<T, Integer> result = new LinkedHashMap<>();
+		i = 0;
+		for (T tag : tags) {
+			result.put(tag, counts[i++]);
+		}
+		return result;
+	}
+	
+	/** Registers a materialized view.
+	 * <br>The view's result is computed once, then it is maintained each time a record changes, by testing only this record against the view's expression.
+	 * <br>The view's name can be used as a literal in expressions, where evaluating it costs nothing. It hides the tag with the same literal, if any.
+	 * <br>Unknown tags in the view's expression are assumed as included in no record.
+	 * @param name The view's name. It should be a valid literal for the table's evaluator.
+	 * @param logicalExpr The view's expression. It can refer to previously registered views.
+	 * @throws IllegalArgumentException if a view with the same name already exists, or if the expression refers to the view itself.
+	 * @throws IllegalStateException if the table is locked
+	 * @throws UnsupportedOperationException if the table's evaluator is not an {@link ExtendedEvaluator}.
+	 */
+	public void registerView(String name, String logicalExpr) {
+		check();
+		if (getExtendedEvaluator()==null) {
+			throw new UnsupportedOperationException("Views require an "+ExtendedEvaluator.class.getSimpleName());
+		}
+		if (views.containsKey(name)) {
+			throw new IllegalArgumentException("View "+name+" already exists");
+		}
+		Bitmap bitmap = factory.getEvaluator().evaluate(this, logicalExpr, false);
+		View<T> view = newView(name, logicalExpr, bitmap.isLocked() ? bitmap.clone() : bitmap);
+		if (view.dependsOn(Collections.singleton(view.getTag()))) {
+			throw new IllegalArgumentException("View "+name+" refers to itself");
+		}
+		views.put(name, view);
+		tagChanged(view.getTag());
+	}
+
+	private View<T> newView(String name, String logicalExpr, Bitmap bitmap) {
+		ExtendedEvaluator<T> evaluator = getExtendedEvaluator();
+		if (evaluator==null) {
+			throw new UnsupportedOperationException("Views require an "+ExtendedEvaluator.class.getSimpleName());
+		}
+		Set<T> nameTags = evaluator.describe(name).getTags();
+		if (nameTags.size()!=1) {
+			throw new IllegalArgumentException(name+" is not a valid view name");
+		}
+		ExpressionDescriptor<T> descriptor = evaluator.describe(logicalExpr);
+		return new View<T>(nameTags.iterator().next(), logicalExpr, descriptor.getTags(), descriptor.getPrefixes(), bitmap);
+	}
+
+	/** Unregisters a materialized view.
+	 * @param name The view's name.
+	 * @return true if the view was registered.
+	 * @throws IllegalArgumentException if another view refers to this view.
+	 * @throws IllegalStateException if the table is locked
+	 */
+	public boolean unregisterView(String name) {
+		check();
+		View<T> view = views.get(name);
+		if (view==null) {
+			return false;
+		}
+		for (View<T> other : views.values()) {
+			if (other.dependsOn(Collections.singleton(view.getTag()))) {
+				throw new IllegalArgumentException("View "+name+" is used by another view");
+			}
+		}
+		views.remove(name);
+		tagChanged(view.getTag());
+		return true;
+	}
+
+	/** Gets the records that contain at least one of the tags that start with a prefix.
+	 * <br>A tag starts with a prefix if its string representation starts with it.
+	 * <br>The union of the tags is computed once, then it is cached until one of these tags changes.
+	 * @param prefix The prefix
+	 * @return a locked bitmap, empty if no tag starts with the prefix.
+	 */
+	public Bitmap getPrefixBitMapIndex(String prefix) {
+		Bitmap result = prefixIndex.getUnion(prefix);
+		if (result==null) {
+			List<T> tags = prefixIndex.getTags(prefix);
+			List<Bitmap> bitmaps = new ArrayList<>(tags.size());
+			for (T tag : tags) {
+				bitmaps.add(tagToBitmap.get(tag));
+			}
+			result = factory.create();
+			result.or(bitmaps);
+			result.lock();
+			prefixIndex.putUnion(prefix, result);
+		}
+		return result;
+	}
+
+	/** Gets the records whose value in a numeric column is in a range.
+	 * <br>The column is stored as a bit-sliced index, so this method performs a few bitmap operations per bit of the column's highest value,
+	 * whatever the number of distinct values is.
+	 * @param column The column
+	 * @param min The minimum value (inclusive)
+	 * @param max The maximum value (inclusive)
+	 * @return a new mutable bitmap, or null if the column is unknown. It may contain deleted records.
+	 * @see #setValue(int, Object, long, boolean)
+	 */
+	public Bitmap getColumnBitMapIndex(T column, long min, long max) {
+		NumericColumn numericColumn = columns.get(column);
+		return numericColumn==null ? null : numericColumn.getRange(min, max);
+	}
+
+	/** Gets the bitmap of a materialized view.
+	 * <br>It contains no deleted record.
+	 * @param name The view's name
+	 * @return a bitmap or null if no view is registered with this name. <b>Warning:</b> this bitmap is maintained by the table, it should not be modified.
+	 */
+	public Bitmap getView(String name) {
+		View<T> view = views.get(name);
+		return view==null ? null : view.getBitmap();
+	}
+
+	/** Updates the views after a record has changed.
+	 * @param id The record's id
+	 * @param changedTags The tags of the record that changed, or null if all the views should be updated.
+	 */
+	private void updateViews(int id, Set<T> changedTags) {
+		if (views.isEmpty()) {
+			return;
+		}
+		Set<T> changed = changedTags==null ? null : new HashSet<>(changedTags);
+		boolean deleted = id>=size || deletedRecords.contains(id);
+		// Views can only be registered with an extended evaluator
+		ExtendedEvaluator<T> evaluator = getExtendedEvaluator();
+		for (View<T> view : views.values()) {
+			if (changed==null || view.dependsOn(changed)) {
+				boolean matches = !deleted && evaluator.matches(this, view.getExpression(), id, false);
+				Bitmap bitmap = view.getBitmap();
+				if (matches!=bitmap.contains(id)) {
+					if (matches) {
+						bitmap.add(id);
+					} else {
+						bitmap.remove(id);
+					}
+					tagChanged(view.getTag());
+					if (changed!=null) {
+						// Views registered later may depend on this one
+						changed.add(view.getTag());
+					}
+				}
+			}
+		}
+	}
+
+	/** Evaluates again the views that depend on some tags.
+	 * @param changedTags The tags whose records have changed
+	 */
+	private void refreshViews(Set<T> changedTags) {
+		Set<T> changed = new HashSet<>(changedTags);
+		for (View<T> view : views.values()) {
+			if (view.dependsOn(changed)) {
+				Bitmap bitmap = factory.getEvaluator().evaluate(this, view.getExpression(), false);
+				view.setBitmap(bitmap.isLocked() ? bitmap.clone() : bitmap);
+				tagChanged(view.getTag());
+				changed.add(view.getTag());
+			}
+		}
+	}
+
+	private Map<T, NumericColumn> copyColumns(boolean locked) {
+		Map<T, NumericColumn> result = new LinkedHashMap<>();
+		for (Map.Entry<T, NumericColumn> entry : columns.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().copy(locked));
+		}
+		return result;
+	}
+
+	private Map<String, View<T>> copyViews(boolean locked) {
+		Map<String, View<T>> result = new LinkedHashMap<>();
+		for (Map.Entry<String, View<T>> entry : views.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().copy(locked));
+		}
+		return result;
+	}
+
+	/** Sets the size of the result cache.
+	 * <br>When the cache is enabled, the results of {@link #evaluate(String, boolean)} are kept in memory, and
+	 * evaluating again an equivalent expression returns the cached result, unless the records of the tags
+	 * it depends on have changed.
+	 * <br>The cache is not copied when the table is cloned, locked or serialized. A clone or a locked copy of a table starts with
+	 * an empty cache of the same size.
+	 * @param maxSizeInBytes The maximum number of bytes occupied by the cached results (0 to disable the cache).
+	 * @throws IllegalArgumentException if maxSizeInBytes is negative.
+	 */
+	public void setResultCacheSize(long maxSizeInBytes) {
+		if (maxSizeInBytes<0) {
+			throw new IllegalArgumentException();
+		}
+		this.resultCache = maxSizeInBytes==0 ? null : new ResultCache<T>(maxSizeInBytes, tombstones==null);
+	}
+
+	/** Enables or disables lazy deletion.
+	 * <br>By default, deleting a record removes it from the bitmaps of all the tags, so its cost is proportional to the number of tags.
+	 * When lazy deletion is enabled, deleted records are only marked as deleted. They remain in the tags bitmaps as <i>tombstones</i>,
+	 * which are ignored by the evaluations.
+	 * <br>Tombstones are removed from a tag's bitmap the next time a record is added to or removed from it, and from all the bitmaps by {@link #cleanDeletedRecords()}.
+	 * Their indexes are not reused by new records until {@link #cleanDeletedRecords()} is called.
+	 * <br>Disabling lazy deletion cleans the deleted records. Enabling or disabling it empties the result cache.
+	 * @param lazy true to enable lazy deletion, false to disable it.
+	 * @throws IllegalStateException if this is locked
+	 */
+	public void setLazyDeletion(boolean lazy) {
+		check();
+		if (lazy==(tombstones!=null)) {
+			return;
+		}
+		if (lazy) {
+			tombstones = factory.create();
+		} else {
+			cleanDeletedRecords();
+			tombstones = null;
+		}
+		if (resultCache!=null) {
+			resultCache = new ResultCache<T>(resultCache.getMaxSizeInBytes(), !lazy);
+		}
+	}
+
+	/** Tests whether lazy deletion is enabled.
+	 * @return true if lazy deletion is enabled.
+	 * @see #setLazyDeletion(boolean)
+	 */
+	public boolean isLazyDeletion() {
+		return tombstones!=null;
+	}
+
+	/** Removes the tombstones left by lazy deletion from the tags bitmaps.
+	 * <br>The bitmaps are cleaned concurrently on the {@link Pools#getForkJoinPool() shared fork/join pool}.
+	 * Once cleaned, the indexes of the deleted records can be reused by new records.
+	 * <br>This method does nothing if lazy deletion is disabled.
+	 * @throws IllegalStateException if this is locked
+	 * @see #setLazyDeletion(boolean)
+	 */
+	public void cleanDeletedRecords() {
+		check();
+		if (tombstones==null || tombstones.isEmpty()) {
+			return;
+		}
+		Bitmap[] bitmaps = new Bitmap[getTagsNumber()];
+		int i = 0;
+		for (T tag : tagToBitmap.keySet()) {
+			bitmaps[i++] = tagToBitmap.get(tag);
+		}
+		Pools.getForkJoinPool().invoke(new CleanupTask(tombstones, bitmaps, 0, bitmaps.length));
+		prefixIndex.clearUnions();
+		tombstones = factory.create();
+		// The records at the end of the table are removed from the table
+		if (size>0 && deletedRecords.contains(size-1)) {
+			recordsChanged();
+			while (size>0 && deletedRecords.contains(size-1)) {
+				deletedRecords.remove(size-1);
+				size--;
+			}
+		}
+	}
+
+	/** Gets the number of deleted records that are still in the tags bitmaps.
+	 * @return an integer (0 if lazy deletion is disabled)
+	 * @see #setLazyDeletion(boolean)
+	 */
+	public int getTombstonesCount() {
+		return tombstones==null ? 0 : tombstones.getCardinality();
+	}
+	
+	/** Renumbers the records of this table in order to remove the deleted records.
+	 * <br>The records keep their order, but their indexes become contiguous: after this method is called, {@link #getSize()} equals {@link #getLogicalSize()}
+	 * and there's no deleted record. It reduces the size of the bitmaps and the cost of the negations.
+	 * <br>All the bitmaps (tags, views and numeric columns) are rewritten concurrently on the {@link Pools#getForkJoinPool() shared fork/join pool}.
+	 * The tombstones left by lazy deletion are removed too. The result cache is emptied.
+	 * @return The mapping from the old indexes to the new ones: the new index of record <i>i</i> is <i>result[i]</i>, or -1 if the record was deleted.
+	 * The array's length is the table size before the compaction.
+	 * @throws IllegalStateException if this is locked
+	 */
+	public int[] compact() {
+		check();
+		int[] mapping = new int[size];
+		IntIterator deleted = deletedRecords.getIterator();
+		int nextDeleted = deleted.hasNext() ? deleted.next() : size;
+		int index = 0;
+		for (int i = 0; i < size; i++) {
+			if (i==nextDeleted) {
+				mapping[i] = -1;
+				nextDeleted = deleted.hasNext() ? deleted.next() : size;
+			} else {
+				mapping[i] = index++;
+			}
+		}
+		if (index==size && getTombstonesCount()==0) {
+			// Nothing to compact
+			return mapping;
+		}
+		List<Bitmap> all = new ArrayList<>(tagToBitmap.keySet().size()+views.size());
+		for (T tag : tagToBitmap.keySet()) {
+			all.add(tagToBitmap.get(tag));
+		}
+		for (View<T> view : views.values()) {
+			all.add(view.getBitmap());
+		}
+		for (NumericColumn column : columns.values()) {
+			all.add(column.getExists());
+			all.addAll(column.getSlices());
+		}
+		Bitmap[] bitmaps = all.toArray(new Bitmap[all.size()]);
+		Pools.getForkJoinPool().invoke(new RemapTask(factory, mapping, bitmaps, 0, bitmaps.length));
+		int i = 0;
+		for (T tag : new ArrayList<>(tagToBitmap.keySet())) {
+			tagToBitmap.put(tag, bitmaps[i++]);
+		}
+		for (View<T> view : views.values()) {
+			view.setBitmap(bitmaps[i++]);
+		}
+		for (Map.Entry<T, NumericColumn> entry : columns.entrySet()) {
+			Bitmap exists = bitmaps[i++];
+			List<Bitmap> slices = new ArrayList<>(entry.getValue().getSlices().size());
+			for (int j = 0; j < entry.getValue().getSlices().size(); j++) {
+				slices.add(bitmaps[i++]);
+			}
+			entry.setValue(new NumericColumn(factory, exists, slices));
+		}
+		deletedRecords = factory.create();
+		if (tombstones!=null) {
+			tombstones = factory.create();
+		}
+		size = index;
+		logicalSize = index;
+		prefixIndex.clearUnions();
+		if (resultCache!=null) {
+			resultCache = new ResultCache<T>(resultCache.getMaxSizeInBytes(), tombstones==null);
+		}
+		return mapping;
+	}
+
+	/** Gets the maximum size of the result cache.
+	 * @return The maximum number of bytes occupied by the cached results (0 if the cache is disabled).
+	 * @see #setResultCacheSize(long)
+	 */
+	public long getResultCacheSize() {
+		return resultCache==null ? 0 : resultCache.getMaxSizeInBytes();
 	}
 	
 	/** Gets the set of records having a tag.
 	 * @param tag The tag
-	 * @return a record set.
+	 * @return a record set. If lazy deletion is enabled, it may contain deleted records (see {@link #setLazyDeletion(boolean)}).
 	 * <br><b>Warning:</b> There are side effects between the returned instance and the table.
 	 */
 	public Bitmap getBitMapIndex(T tag) {
@@ -243,25 +1247,40 @@ public class TagsTable<T> implements Cloneable, Serializable {
 
 	/** Clones the table.
 	 * This method performs a deep clone and guarantees no side effect between this and the returned table.
+	 * <br>The metrics are not copied, they are disabled in the returned table.
 	 * @return a new Table that contains a modifiable copy of this.
 	 */
 	@Override
 	public TagsTable<T> clone() {
+		if (metrics!=null) {
+			metrics.cloned();
+		}
+		return copy();
+	}
+
+	private TagsTable<T> copy() {
 		try {
 			@SuppressWarnings("unchecked")
 			TagsTable<T> result = (TagsTable<T>) super.clone();
 			result.tagToBitmap = factory.buildmap();
+			int[] buffer = new int[BATCH_SIZE];
 			for (T key : this.tagToBitmap.keySet()) {
-				IntIterator iterator = getBitMapIndex(key).getIterator();
+				IntBatchIterator iterator = getBitMapIndex(key).getBatchIterator();
 				Bitmap freshBitmap = factory.create();
-				while (iterator.hasNext()) {
-					freshBitmap.add(iterator.next());
+				for (int count = iterator.nextBatch(buffer); count>0; count = iterator.nextBatch(buffer)) {
+					freshBitmap.add(buffer, count);
 				}
 				freshBitmap.trim();
 				result.tagToBitmap.put(key, freshBitmap);
 			}
 			result.deletedRecords = deletedRecords.clone();
+			result.tombstones = tombstones==null ? null : tombstones.clone();
+			result.views = copyViews(false);
+			result.columns = copyColumns(false);
+			result.prefixIndex = prefixIndex.copy();
 			result.isLocked = false;
+			result.resultCache = resultCache==null ? null : new ResultCache<T>(resultCache.getMaxSizeInBytes(), tombstones==null);
+			result.metrics = null;
 			return result;
 		} catch (CloneNotSupportedException e) {
 			throw new UnexpectedCloneNotSupportedException(e);
@@ -269,23 +1288,51 @@ public class TagsTable<T> implements Cloneable, Serializable {
 	}
 	
 	/** Gets an immutable copy of a table.
+	 * <br>The metrics are not copied, they are disabled in the returned table.
 	 * @return a new table. This method guarantees no side effect between this and the returned table.
 	 */
 	public TagsTable<T> getLocked() {
 		if (isLocked) {
 			return this;
 		} else {
-			TagsTable<T> result = (TagsTable<T>) clone();
+			if (metrics!=null) {
+				metrics.locked();
+			}
+			TagsTable<T> result = copy();
 			result.tagToBitmap = factory.buildmap();
 			for (T key : tagToBitmap.keySet()) {
 				result.tagToBitmap.put(key, tagToBitmap.get(key).getLocked());
 			}
 			result.deletedRecords = deletedRecords.clone();
+			result.tombstones = tombstones==null ? null : tombstones.getLocked();
+			result.views = copyViews(true);
+			result.columns = copyColumns(true);
 			result.isLocked = true;
 			return result;
 		}
 	}
 	
+	/** Enables the metrics of this table.
+	 * <br>Once enabled, the latencies of the queries ({@link #evaluate(String, boolean)}, {@link #evaluateParallel(String, boolean)},
+	 * {@link #evaluateAll(List, boolean)} and {@link #count(String, boolean)}) and the numbers of modifications, clones and locked copies are recorded.
+	 * <br>The metrics are not serialized.
+	 * @return The table's metrics. They can be registered in a JMX MBean server.
+	 */
+	public TableMetrics enableMetrics() {
+		if (metrics==null) {
+			metrics = new TableMetrics(this);
+		}
+		return metrics;
+	}
+
+	/** Gets the metrics of this table.
+	 * @return The table's metrics, or null if they are not enabled.
+	 * @see #enableMetrics()
+	 */
+	public TableMetrics getMetrics() {
+		return metrics;
+	}
+
 	/** Tests whether this table is immutable.
 	 * @return true if the table is immutable.
 	 */
@@ -309,6 +1356,9 @@ public class TagsTable<T> implements Cloneable, Serializable {
 		if (id>=getSize()) {
 			throw new IllegalArgumentException();
 		}
+		if (isTombstone(id)) {
+			return Collections.<T>emptyIterator();
+		}
 		return new TagsIterator(id);
 	}
 	
@@ -326,7 +1376,7 @@ public class TagsTable<T> implements Cloneable, Serializable {
 	 */
 	public boolean contains(int id, T tag) {
 		Bitmap bitmap = tagToBitmap.get(tag);
-		return bitmap==null?false:bitmap.contains(id);
+		return bitmap==null||isTombstone(id)?false:bitmap.contains(id);
 	}
 
 	/** Adds a tag to a record. 
@@ -345,9 +1395,13 @@ public class TagsTable<T> implements Cloneable, Serializable {
 			} else {
 				bitmap = factory.create();
 				tagToBitmap.put(tag, bitmap);
+				prefixIndex.add(tag);
 			}
 		}
+		clean(bitmap);
 		bitmap.add(id);
+		tagChanged(tag);
+		updateViews(id, Collections.singleton(tag));
 	}
 
 	/** Removes a tag from a record.
@@ -360,10 +1414,77 @@ public class TagsTable<T> implements Cloneable, Serializable {
 		check();
 		Bitmap bitmap = tagToBitmap.get(tag);
 		if (bitmap!=null) {
+			clean(bitmap);
 			bitmap.remove(id);
+			tagChanged(tag);
+			updateViews(id, Collections.singleton(tag));
 		}
 	}
 	
+	/** Sets the value of a record in a numeric column.
+	 * <br>Numeric columns are stored apart from the tags. Expressions compare their values with constants
+	 * (the supported syntax depends on the {@link Evaluator}, for instance <i>price &gt; 100</i>).
+	 * <br>The column is referenced by a tag in order to track its changes; its name can be the same as a tag's one, without any conflict.
+	 * @param id A record id.
+	 * @param column The column
+	 * @param value The value
+	 * @param failIfUnknown true if the method should fail if the column is unknown, false if unknown columns should be added automatically.
+	 * @throws UnknownTagException if the column is unknown and <i>failIfUnknown</i> is true.
+	 * @throws IllegalArgumentException if value is negative.
+	 * @throws IllegalStateException if this is locked
+	 */
+	public void setValue(int id, T column, long value, boolean failIfUnknown) {
+		check();
+		if (value<0) {
+			throw new IllegalArgumentException();
+		}
+		NumericColumn numericColumn = columns.get(column);
+		if (numericColumn==null) {
+			if (failIfUnknown) {
+				throw new UnknownTagException(column.toString());
+			} else {
+				numericColumn = new NumericColumn(factory);
+				columns.put(column, numericColumn);
+			}
+		}
+		numericColumn.set(id, value);
+		tagChanged(column);
+		updateViews(id, Collections.singleton(column));
+	}
+
+	/** Removes the value of a record in a numeric column.
+	 * <br>If the record has no value in the column, this method does nothing.
+	 * @param id A record id.
+	 * @param column The column
+	 * @throws IllegalStateException if this is locked
+	 */
+	public void removeValue(int id, T column) {
+		check();
+		NumericColumn numericColumn = columns.get(column);
+		if (numericColumn!=null && numericColumn.remove(id)) {
+			tagChanged(column);
+			updateViews(id, Collections.singleton(column));
+		}
+	}
+
+	/** Tests whether the table contains a numeric column.
+	 * @param column The column
+	 * @return true if a value was already set in this column.
+	 */
+	public boolean hasColumn(T column) {
+		return columns.containsKey(column);
+	}
+
+	/** Gets the value of a record in a numeric column.
+	 * @param id A record id.
+	 * @param column The column
+	 * @return The value, or null if the column is unknown or the record has no value in the column.
+	 */
+	public Long getValue(int id, T column) {
+		NumericColumn numericColumn = columns.get(column);
+		return numericColumn==null ? null : numericColumn.get(id);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
@@ -398,6 +1519,24 @@ public class TagsTable<T> implements Cloneable, Serializable {
 		}
 		out.writeObject(deletedRecords);
 		out.writeBoolean(isLocked());
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(views.size());
+		for (Map.Entry<String, View<T>> entry : views.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeUTF(entry.getValue().getExpression());
+			out.writeObject(entry.getValue().getBitmap());
+		}
+		out.writeInt(columns.size());
+		for (Map.Entry<T, NumericColumn> entry : columns.entrySet()) {
+			out.writeObject(entry.getKey());
+			out.writeObject(entry.getValue().getExists());
+			List<Bitmap> slices = entry.getValue().getSlices();
+			out.writeInt(slices.size());
+			for (Bitmap slice : slices) {
+				out.writeObject(slice);
+			}
+		}
+		out.writeObject(tombstones);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -407,11 +1546,44 @@ public class TagsTable<T> implements Cloneable, Serializable {
 		this.logicalSize = in.readInt();
 		int nbTags = in.readInt();
 		this.tagToBitmap = factory.buildmap();
+		this.prefixIndex = new PrefixIndex<>();
 		for (int i = 0; i < nbTags; i++) {
-			tagToBitmap.put((T)in.readObject(), (Bitmap)in.readObject());
+			T tag = (T)in.readObject();
+			tagToBitmap.put(tag, (Bitmap)in.readObject());
+			prefixIndex.add(tag);
 		}
 		this.deletedRecords = (Bitmap) in.readObject();
 		this.isLocked = in.readBoolean();
+		this.views = new LinkedHashMap<>();
+		this.columns = new LinkedHashMap<>();
+		int version;
+		try {
+			version = in.readInt();
+		} catch (EOFException e) {
+			// The table was serialized with the original format, that has no views, no columns and no tombstones
+			return;
+		}
+		if (version>FORMAT_VERSION) {
+			throw new InvalidObjectException("Unsupported format version "+version);
+		}
+		int nbViews = in.readInt();
+		for (int i = 0; i < nbViews; i++) {
+			String name = in.readUTF();
+			String expression = in.readUTF();
+			views.put(name, newView(name, expression, (Bitmap)in.readObject()));
+		}
+		int nbColumns = in.readInt();
+		for (int i = 0; i < nbColumns; i++) {
+			T column = (T)in.readObject();
+			Bitmap exists = (Bitmap)in.readObject();
+			int nbSlices = in.readInt();
+			List<Bitmap> slices = new ArrayList<>(nbSlices);
+			for (int j = 0; j < nbSlices; j++) {
+				slices.add((Bitmap)in.readObject());
+			}
+			columns.put(column, new NumericColumn(factory, exists, slices));
+		}
+		this.tombstones = (Bitmap) in.readObject();
 	}
 
 	/** Gets the number of tags in this table.
@@ -0,0 +1,75 @@
+package com.fathzer.imt;
+
+import java.util.Set;
+
+/** A materialized view: the result of a logical expression, registered in a table under a name.
+ * <br>The table keeps the view's bitmap up to date when its records change.
+ * @param <T> The type of the tags.
+ */
+final class View<T> {
+	private final T tag;
+	private final String expression;
+	private final Set<T> tags;
+	private final Set<String> prefixes;
+	private Bitmap bitmap;
+
+	/** Constructor.
+	 * @param tag The tag that refers to the view in expressions
+	 * @param expression The view's expression
+	 * @param tags The tags the expression refers to
+	 * @param prefixes The prefixes of the tags patterns the expression refers to
+	 * @param bitmap The result of the expression. It should be owned by the view.
+	 */
+	View(T tag, String expression, Set<T> tags, Set<String> prefixes, Bitmap bitmap) {
+		this.tag = tag;
+		this.expression = expression;
+		this.tags = tags;
+		this.prefixes = prefixes;
+		this.bitmap = bitmap;
+	}
+
+	T getTag() {
+		return tag;
+	}
+
+	String getExpression() {
+		return expression;
+	}
+
+	/** Tests whether the view depends on a tag.
+	 * @param tags Some tags
+	 * @return true if the view's expression refers to at least one of the tags, directly or through a prefix.
+	 */
+	boolean dependsOn(Set<T> tags) {
+		for (T t : tags) {
+			if (this.tags.contains(t)) {
+				return true;
+			}
+			if (!prefixes.isEmpty()) {
+				String key = t.toString();
+				for (String prefix : prefixes) {
+					if (key.startsWith(prefix)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	Bitmap getBitmap() {
+		return bitmap;
+	}
+
+	void setBitmap(Bitmap bitmap) {
+		this.bitmap = bitmap;
+	}
+
+	/** Gets a copy of this view.
+	 * @param locked true to get a view with a locked bitmap
+	 * @return a new view
+	 */
+	View<T> copy(boolean locked) {
+		return new View<T>(tag, expression, tags, prefixes, locked ? bitmap.getLocked() : bitmap.clone());
+	}
+}
@@ -1,44 +1,160 @@
 package com.fathzer.imt.implementation;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.fathzer.imt.Bitmap;
-import com.fathzer.imt.Evaluator;
+import com.fathzer.imt.ExpressionDescriptor;
+import com.fathzer.imt.ExtendedEvaluator;
+import com.fathzer.imt.ProfileListener;
+import com.fathzer.imt.QueryPlan;
 import com.fathzer.imt.TagsTable;
-import com.fathzer.imt.UnknownTagException;
 import com.fathzer.imt.util.IntIterator;
+import com.fathzer.imt.util.LRUCache;
+import com.fathzer.imt.util.Pools;
 import com.fathzer.soft.javaluator.AbstractEvaluator;
+import com.fathzer.soft.javaluator.Function;
 import com.fathzer.soft.javaluator.Operator;
 import com.fathzer.soft.javaluator.Parameters;
 
 /** A default logical evaluator based on the <a href="javaluator.fathzer.com">javaluator library</a>
- * <br><b>Warning</b>: This evaluator is not thread safe.
+ * <br>Expressions are compiled once in a tree of {@link Node}, where literals are already converted to tags.
+ * The compiled expressions are kept in a bounded cache, so evaluating an expression again does not require to parse it.
+ * <br>This evaluator is thread safe.
  * @author Jean-Marc Astesana
  * @param <T> The type of keys used in the tags table on which this evaluator works.
  */
-public abstract class AbstractLogicalEvaluator<T> extends AbstractEvaluator<Bitmap> implements Evaluator<T> {
+public abstract class AbstractLogicalEvaluator<T> extends AbstractEvaluator<Node<T>> implements ExtendedEvaluator<T> {
+	/** The default maximum number of compiled expressions kept in the cache. */
+	public static final int DEFAULT_CACHE_SIZE = 4096;
+	/** The minimum number of records in a range evaluated by {@link #evaluateParallel(TagsTable, String, boolean)}.
+	 * <br>Ranges sizes are multiples of this number, which is the number of records in a Roaring container (and a multiple of the words size of other bitmaps).
+	 */
+	public static final int RANGE_SIZE = 1<<16;
+
+	private final LRUCache<String, Node<T>> cache;
+	private final AtomicLong evaluations;
+	private volatile ProfileListener profileListener;
+	private volatile int profilePeriod;
+
 	/** Constructor.
+	 * <br>The compiled expressions cache size is {@link #DEFAULT_CACHE_SIZE}.
 	 * @param params The evaluator parameters (see <a href="javaluator.fathzer.com/en/doc/javadoc/com/fathzer/soft/javaluator/Parameters.html">Parameter</a>)
 	 */
 	protected AbstractLogicalEvaluator(Parameters params) {
+		this(params, DEFAULT_CACHE_SIZE);
+	}
+
+	/** Constructor.
+	 * @param params The evaluator parameters (see <a href="javaluator.fathzer.com/en/doc/javadoc/com/fathzer/soft/javaluator/Parameters.html">Parameter</a>)
+	 * @param cacheSize The maximum number of compiled expressions kept in the cache (0 to disable the cache).
+	 */
+	protected AbstractLogicalEvaluator(Parameters params, int cacheSize) {
 		super(params);
+		this.cache = new LRUCache<>(cacheSize);
+		this.evaluations = new AtomicLong();
 	}
-	
+
+	/** Sets a listener that receives the plans of a sample of the evaluations.
+	 * <br>One out of <i>period</i> calls to {@link #evaluate(TagsTable, String, boolean)} is evaluated as {@link #explain(TagsTable, String, boolean)} does,
+	 * and its plan is sent to the listener. Other evaluations are not slowed down.
+	 * @param listener The listener, or null to stop profiling
+	 * @param period The sampling period (1 to profile every evaluation)
+	 * @throws IllegalArgumentException if period is not strictly positive.
+	 */
+	public void setProfileListener(ProfileListener listener, int period) {
+		if (period<=0) {
+			throw new IllegalArgumentException();
+		}
+		this.profilePeriod = period;
+		this.profileListener = listener;
+	}
+
+	/** The suffix of the literals that refer to all the tags that start with a prefix (for instance <i>color:*</i>). */
+	public static final String WILDCARD = "*";
+	/** A comparison of a numeric column with a constant (for instance <i>price &gt; 100</i>). */
+	private static final Pattern COMPARISON = Pattern.compile("(.+?)\\s*(>=|<=|>|<|=)\\s*(-?\\d+)");
+	/** A range of values of a numeric column (for instance <i>price between 10 and 20</i>). */
+	private static final Pattern BETWEEN = Pattern.compile("(.+?)\\s+between\\s+(-?\\d+)\\s+and\\s+(-?\\d+)", Pattern.CASE_INSENSITIVE);
+
+	/** {@inheritDoc}
+	 * <br>Besides tags, literals can be:<ul>
+	 * <li>A prefix followed by {@link #WILDCARD}, which refers to all the tags that start with the prefix.</li>
+	 * <li>A comparison of a numeric column with an integer constant: <i>column op constant</i>, where op is one of &gt;, &gt;=, &lt;, &lt;= or =.</li>
+	 * <li>A range of values of a numeric column: <i>column between min and max</i> (bounds are inclusive).</li>
+	 * </ul>
+	 * These literals are resolved when the expression is evaluated, as the tags and columns depend on the table: A literal that is the name
+	 * of a view or of a tag of the table refers to it, even if it ends with {@link #WILDCARD}, and a comparison refers to a tag when the table
+	 * has no such column.
+	 * Numeric columns are converted to tags by {@link #stringToTag(String)}.
+	 */
 	@Override
-	protected Bitmap toValue(String literal, Object context) {
-		@SuppressWarnings("unchecked")
-		Context ct = (Context) context;
-		Bitmap result = ct.table.getBitMapIndex(stringToTag(literal));
-		if (result==null) {
-			if (ct.failIfUnknown) {
-				throw new UnknownTagException(literal);
+	protected Node<T> toValue(String literal, Object context) {
+		try {
+			Node<T> column = toColumnNode(literal);
+			if (column!=null) {
+				return column;
+			}
+		} catch (NumberFormatException e) {
+			// A constant does not fit in a long, the literal can't be a comparison, it is a tag
+		}
+		if (literal.endsWith(WILDCARD)) {
+			return new PrefixNode<T>(literal.substring(0, literal.length()-WILDCARD.length()), literal, stringToTag(literal));
+		}
+		return new TagNode<T>(stringToTag(literal), literal);
+	}
+
+	/** Converts a literal to a comparison of a numeric column.
+	 * @param literal The literal
+	 * @return a node or null if the literal is not a comparison.
+	 * @throws NumberFormatException if a constant of the comparison does not fit in a long.
+	 */
+	private Node<T> toColumnNode(String literal) {
+		Matcher matcher = BETWEEN.matcher(literal);
+		if (matcher.matches()) {
+			return toColumnNode(matcher.group(1), Long.parseLong(matcher.group(2)), Long.parseLong(matcher.group(3)), literal);
+		}
+		matcher = COMPARISON.matcher(literal);
+		if (matcher.matches()) {
+			String operator = matcher.group(2);
+			long constant = Long.parseLong(matcher.group(3));
+			long min = Long.MIN_VALUE;
+			long max = Long.MAX_VALUE;
+			if (operator.equals(">")) {
+				// If the constant is the maximum long, min>max and no value matches
+				min = constant==Long.MAX_VALUE ? constant : constant+1;
+				max = constant==Long.MAX_VALUE ? constant-1 : max;
+			} else if (operator.equals("<")) {
+				min = constant==Long.MIN_VALUE ? constant+1 : min;
+				max = constant==Long.MIN_VALUE ? constant : constant-1;
+			} else if (operator.equals(">=")) {
+				min = constant;
+			} else if (operator.equals("<=")) {
+				max = constant;
 			} else {
-				result = ct.table.getFactory().create();
+				min = constant;
+				max = constant;
 			}
+			return toColumnNode(matcher.group(1), min, max, literal);
 		}
-		return result;
+		return null;
+	}
+
+	private Node<T> toColumnNode(String name, long min, long max, String literal) {
+		return new ColumnNode<T>(stringToTag(name), name, min, max, literal, stringToTag(literal));
 	}
-	
+
 	/** Converts a variable name found in a logical expression to a tag.
 	 * @param variable The variable name
 	 * @return the tag corresponding to that variable.
@@ -46,144 +162,325 @@ public abstract class AbstractLogicalEvaluator<T> extends AbstractEvaluator<Bitm
 	protected abstract T stringToTag(String variable);
 
 	@Override
-	protected Bitmap evaluate(Operator operator, Iterator<Bitmap> operands, Object evaluationContext) {
-		Bitmap v1 = operands.next();
-		Bitmap v2 = operands.hasNext() ? operands.next() : null;
-		if (v1 instanceof Container) {
-			if (v2 instanceof Container) {
-				v2 = ((Container)v2).internal;
-			}
-		} else if (v2 instanceof Container) {
-			Bitmap dummy = v1;
-			v1 = v2;
-			v2 = dummy;
-		} else {
-			v1 = new Container(v1);
-		}
+	protected Node<T> evaluate(Operator operator, Iterator<Node<T>> operands, Object evaluationContext) {
 		if (getNegate().equals(operator)) {
-			@SuppressWarnings("unchecked")
-			Context ct = (Context)evaluationContext;
-			v1.not(ct.table.getSize());
+			return new NotNode<T>(operands.next());
 		} else if (getOr().equals(operator)) {
-			v1.or(v2);
+			return new OrNode<T>(flatten(OrNode.class, operands));
 		} else if (getAnd().equals(operator)) {
-			v1.and(v2);
+			return new AndNode<T>(flatten(AndNode.class, operands));
 		} else {
-			v1 = super.evaluate(operator, operands, evaluationContext);
+			return super.evaluate(operator, operands, evaluationContext);
 		}
-		return v1;
 	}
-	
-	private final class Context {
-		TagsTable<T> table;
-		boolean failIfUnknown;
-		Context(TagsTable<T> table, boolean failIfUnknown) {
-			super();
-			this.table = table;
-			this.failIfUnknown = failIfUnknown;
+
+	@Override
+	protected Node<T> evaluate(Function function, Iterator<Node<T>> arguments, Object evaluationContext) {
+		if (function.equals(getAtLeast())) {
+			Node<T> first = arguments.next();
+			int threshold;
+			try {
+				threshold = Integer.parseInt(first.toString());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("The first argument of "+function.getName()+" should be an integer, not "+first);
+			}
+			List<Node<T>> children = new ArrayList<>();
+			while (arguments.hasNext()) {
+				children.add(arguments.next());
+			}
+			return new ThresholdNode<T>(threshold, children);
+		} else {
+			return super.evaluate(function, arguments, evaluationContext);
 		}
 	}
-	
-	@Override
-	public Bitmap evaluate(TagsTable<T> table, String expression, boolean failIfUnknown) {
-		Bitmap result = super.evaluate(expression, new Context(table, failIfUnknown));
-		if (result instanceof Container) {
-			result = ((Container) result).internal;
+
+	/** Gets the operands of an operator, replacing operands that are computed with the same operator by their own operands.
+	 * <br>For instance, a &amp;&amp; b &amp;&amp; c is parsed as (a &amp;&amp; b) &amp;&amp; c and flattened in a single node with 3 operands.
+	 * @param nodeClass The class of the node that implements the operator
+	 * @param operands The operands
+	 * @return a list of nodes
+	 */
+	@SuppressWarnings("rawtypes")
+	private List<Node<T>> flatten(Class<? extends CompositeNode> nodeClass, Iterator<Node<T>> operands) {
+		List<Node<T>> result = new ArrayList<>();
+		while (operands.hasNext()) {
+			Node<T> operand = operands.next();
+			if (nodeClass.equals(operand.getClass())) {
+				result.addAll(((CompositeNode<T>)operand).children);
+			} else {
+				result.add(operand);
+			}
 		}
 		return result;
 	}
 
-	/** Gets the NOT operator.
-	 * @return the NOT operator.
+	/** Compiles an expression.
+	 * <br>If the expression was already compiled and is still in the cache, the cached compiled expression is returned.
+	 * @param expression The expression to compile
+	 * @return The root of the compiled expression
 	 */
-	protected abstract Operator getNegate();
+	protected Node<T> compile(String expression) {
+		Node<T> result = cache.get(expression);
+		if (result==null) {
+			result = super.evaluate(expression, null);
+			cache.put(expression, result);
+		}
+		return result;
+	}
 
-	/** Gets the AND operator.
-	 * @return the and operator.
-	 */
-	protected abstract Operator getAnd();
+	@Override
+	public Bitmap evaluate(TagsTable<T> table, String expression, boolean failIfUnknown) {
+		ProfileListener listener = profileListener;
+		if (listener!=null && evaluations.incrementAndGet()%profilePeriod==0) {
+			ProfiledNode<T> plan = ProfiledNode.wrap(compile(expression));
+			Bitmap result = evaluate(plan, new EvaluationContext<T>(table, failIfUnknown));
+			listener.profiled(expression, plan.toPlan());
+			return result;
+		}
+		return evaluate(compile(expression), new EvaluationContext<T>(table, failIfUnknown));
+	}
 
-	/** Gets the OR operator.
-	 * @return the OR operator.
+	@Override
+	public QueryPlan explain(TagsTable<T> table, String expression, boolean failIfUnknown) {
+		ProfiledNode<T> plan = ProfiledNode.wrap(compile(expression));
+		evaluate(plan, new EvaluationContext<T>(table, failIfUnknown));
+		return plan.toPlan();
+	}
+
+	/** Evaluates a compiled expression and removes the deleted records from its result.
+	 * <br>The deleted records are removed from the bitmap computed by the expression, so, in most cases, the result is not copied.
+	 * @param plan The compiled expression
+	 * @param context The evaluation context
+	 * @return a locked bitmap or a bitmap owned by the caller.
 	 */
-	protected abstract Operator getOr();
-	
-	private static class Container implements Bitmap {
-		Bitmap internal;
-		Container(Bitmap bitmap) {
-			internal = bitmap.clone();
-		}
-		@Override
-		public int getCardinality() {
-			return internal.getCardinality();
+	private static <T> Bitmap evaluate(Node<T> plan, EvaluationContext<T> context) {
+		Bitmap deleted = context.table.getDeletedRecords();
+		if (plan.isStored()) {
+			// The result is a bitmap of the table, if it is locked and contains no deleted record, there's no need to copy it 
+			Bitmap result = plan.evaluate(context);
+			if (result.isLocked() && !result.intersects(deleted)) {
+				return result;
+			}
 		}
-		@Override
-		public void or(Bitmap bitmap) {
-			internal.or(bitmap);
+		Bitmap result = plan.evaluateMutable(context);
+		if (!deleted.isEmpty()) {
+			result.andNot(deleted);
 		}
-		@Override
-		public void xor(Bitmap bitmap) {
-			internal.xor(bitmap);
+		return result;
+	}
+
+	/** {@inheritDoc}
+	 * <br>The records are split in aligned ranges of at least {@link #RANGE_SIZE} records, the expression is evaluated on each range
+	 * on the {@link Pools#getForkJoinPool() shared fork/join pool}, then the partial results, which are disjoint, are merged.
+	 * <br>If the table is too small to be split, the expression is evaluated in the current thread.
+	 */
+	@Override
+	public Bitmap evaluateParallel(final TagsTable<T> table, String expression, final boolean failIfUnknown) {
+		final Node<T> plan = compile(expression);
+		int size = table.getSize();
+		int rangeSize = getRangeSize(size, Pools.getForkJoinPool().getParallelism());
+		if (rangeSize>=size) {
+			return evaluate(plan, new EvaluationContext<T>(table, failIfUnknown));
 		}
-		@Override
-		public void and(Bitmap bitmap) {
-			internal.and(bitmap);			
+		final List<ForkJoinTask<Bitmap>> tasks = new ArrayList<>(size/rangeSize+1);
+		for (int from = 0; from < size; from += rangeSize) {
+			final EvaluationContext<T> context = new EvaluationContext<>(table, failIfUnknown, from, Math.min(size, from+rangeSize));
+			tasks.add(new RecursiveTask<Bitmap>() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected Bitmap compute() {
+					return plan.evaluateMutable(context);
+				}
+			});
 		}
-		@Override
-		public void andNot(Bitmap bitmap) {
-			internal.and(bitmap);
+		runAll(tasks);
+		// Partial results are owned by this method, the first one is used to store the result
+		Bitmap result = tasks.get(0).join();
+		List<Bitmap> others = new ArrayList<>(tasks.size()-1);
+		for (int i = 1; i < tasks.size(); i++) {
+			others.add(tasks.get(i).join());
 		}
-		@Override
-		public void not(int size) {
-			internal.not(size);
+		result.or(others);
+		Bitmap deleted = table.getDeletedRecords();
+		if (!deleted.isEmpty()) {
+			result.andNot(deleted);
 		}
-		@Override
-		public boolean intersects(Bitmap bitmap) {
-			return internal.intersects(bitmap);
+		return result;
+	}
+
+	/** Gets the size of the ranges used by {@link #evaluateParallel(TagsTable, String, boolean)}.
+	 * @param size The number of records
+	 * @param parallelism The number of available threads
+	 * @return a multiple of {@link #RANGE_SIZE}. There are a few ranges per thread, in order to balance the load between threads.
+	 */
+	static int getRangeSize(int size, int parallelism) {
+		long rangeSize = ((long)size + 4L*parallelism - 1) / (4L*parallelism);
+		return (int) Math.max(RANGE_SIZE, (rangeSize + RANGE_SIZE - 1) / RANGE_SIZE * RANGE_SIZE);
+	}
+
+	/** Runs tasks on the {@link Pools#getForkJoinPool() shared fork/join pool} and waits for their completion.
+	 * @param tasks The tasks to run
+	 */
+	private static void runAll(final List<ForkJoinTask<Bitmap>> tasks) {
+		Pools.getForkJoinPool().invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+	}
+
+	/** {@inheritDoc}
+	 * <br>Subexpressions that appear many times in the expressions (even in different operands order) are evaluated only once,
+	 * and the expressions are evaluated in parallel on the {@link Pools#getForkJoinPool() shared fork/join pool}.
+	 */
+	@Override
+	public List<Bitmap> evaluateAll(TagsTable<T> table, List<String> expressions, boolean failIfUnknown) {
+		List<Node<T>> plans = new ArrayList<>(expressions.size());
+		for (String expression : expressions) {
+			plans.add(compile(expression));
 		}
-		@Override
-		public void trim() {
-			internal.trim();
+		plans = share(plans);
+		final EvaluationContext<T> context = new EvaluationContext<>(table, failIfUnknown, true);
+		final List<ForkJoinTask<Bitmap>> tasks = new ArrayList<>(plans.size());
+		for (final Node<T> plan : plans) {
+			tasks.add(new RecursiveTask<Bitmap>() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected Bitmap compute() {
+					return evaluate(plan, context);
+				}
+			});
 		}
-		@Override
-		public IntIterator getIterator() {
-			return internal.getIterator();
+		runAll(tasks);
+		List<Bitmap> result = new ArrayList<>(tasks.size());
+		for (ForkJoinTask<Bitmap> task : tasks) {
+			result.add(task.join());
 		}
-		@Override
-		public boolean isEmpty() {
-			return internal.isEmpty();
+		return result;
+	}
+
+	/** Replaces the subexpressions that appear more than once in a list of compiled expressions by {@link SharedNode}.
+	 * @param plans The compiled expressions
+	 * @return The compiled expressions where repeated subexpressions are shared.
+	 */
+	private List<Node<T>> share(List<Node<T>> plans) {
+		Map<String, Integer> occurrences = new HashMap<>();
+		for (Node<T> plan : plans) {
+			countOccurrences(plan, occurrences);
 		}
-		@Override
-		public boolean contains(int index) {
-			return internal.contains(index);
+		Map<String, Node<T>> shared = new HashMap<>();
+		List<Node<T>> result = new ArrayList<>(plans.size());
+		for (Node<T> plan : plans) {
+			result.add(share(plan, occurrences, shared));
 		}
-		@Override
-		public void add(int index) {
-			internal.add(index);
+		return result;
+	}
+
+	private void countOccurrences(Node<T> node, Map<String, Integer> occurrences) {
+		if (!node.isStored()) {
+			String key = node.getKey();
+			Integer count = occurrences.get(key);
+			occurrences.put(key, count==null ? 1 : count+1);
+			if (count!=null) {
+				// The children of a repeated node will be evaluated once, with that node
+				return;
+			}
 		}
-		@Override
-		public void remove(int index) {
-			internal.remove(index);
+		for (Node<T> child : node.getChildren()) {
+			countOccurrences(child, occurrences);
 		}
-		@Override
-		public long getSizeInBytes() {
-			return internal.getSizeInBytes();
+	}
+
+	private Node<T> share(Node<T> node, Map<String, Integer> occurrences, Map<String, Node<T>> shared) {
+		if (node.isStored()) {
+			return node;
 		}
-		@Override
-		public Bitmap getLocked() {
-			throw new UnsupportedOperationException();
+		String key = node.getKey();
+		Node<T> result = shared.get(key);
+		if (result==null) {
+			List<Node<T>> children = new ArrayList<>(node.getChildren().size());
+			for (Node<T> child : node.getChildren()) {
+				children.add(share(child, occurrences, shared));
+			}
+			result = node.withChildren(children);
+			Integer count = occurrences.get(key);
+			if (count!=null && count>1) {
+				result = new SharedNode<>(result);
+				shared.put(key, result);
+			}
 		}
-		@Override
-		public boolean isLocked() {
-			return false;
+		return result;
+	}
+
+	@Override
+	public boolean matches(TagsTable<T> table, String expression, int id, boolean failIfUnknown) {
+		return compile(expression).getFilter(new EvaluationContext<T>(table, failIfUnknown)).accept(id);
+	}
+
+	@Override
+	public ExpressionDescriptor<T> describe(String expression) {
+		Node<T> node = compile(expression);
+		Set<T> tags = new HashSet<>();
+		node.collectTags(tags);
+		Set<String> prefixes = new HashSet<>();
+		collectPrefixes(node, prefixes);
+		return new ExpressionDescriptor<T>(node.getKey(), tags, prefixes, node.isMonotone());
+	}
+
+	private void collectPrefixes(Node<T> node, Set<String> prefixes) {
+		if (node instanceof PrefixNode) {
+			prefixes.add(((PrefixNode<T>)node).prefix);
 		}
-		@Override
-		public Bitmap clone() {
-			throw new UnsupportedOperationException();
+		for (Node<T> child : node.getChildren()) {
+			collectPrefixes(child, prefixes);
 		}
-		@Override
-		public String toString() {
-			return internal.toString();
+	}
+
+	@Override
+	public int count(TagsTable<T> table, String expression, boolean failIfUnknown) {
+		return compile(expression).count(new EvaluationContext<T>(table, failIfUnknown));
+	}
+
+	@Override
+	public IntIterator getIterator(TagsTable<T> table, String expression, boolean failIfUnknown) {
+		IntIterator result = compile(expression).getIterator(new EvaluationContext<T>(table, failIfUnknown));
+		final Bitmap deleted = table.getDeletedRecords();
+		if (!deleted.isEmpty()) {
+			result = new FilteredIterator(result, new IdFilter() {
+				@Override
+				public boolean accept(int id) {
+					return !deleted.contains(id);
+				}
+			});
 		}
+		return result;
+	}
+
+	/** Gets the NOT operator.
+	 * @return the NOT operator.
+	 */
+	protected abstract Operator getNegate();
+
+	/** Gets the AND operator.
+	 * @return the and operator.
+	 */
+	protected abstract Operator getAnd();
+
+	/** Gets the threshold function.
+	 * <br>Its first argument is an integer <i>k</i>, the others are expressions. Its result contains the records that verify at least <i>k</i> of the expressions.
+	 * @return the threshold function, or null if the evaluator does not support it (the default).
+	 */
+	protected Function getAtLeast() {
+		return null;
 	}
+
+	/** Gets the OR operator.
+	 * @return the OR operator.
+	 */
+	protected abstract Operator getOr();
 }
@@ -0,0 +1,194 @@
+package com.fathzer.imt.implementation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.util.IntIterator;
+
+/** A node that performs the intersection of other nodes.
+ * <br>Operands are evaluated from the smallest to the biggest and the evaluation stops as soon as the intersection is empty.
+ * <br>Consecutive operands are intersected at once with {@link Bitmap#and(java.util.Collection)}.
+ * <br>Negated operands are not negated, their complement is removed from the intersection of the other operands.
+ * @param <T> The type of the table tags.
+ */
+class AndNode<T> extends CompositeNode<T> {
+	AndNode(List<Node<T>> children) {
+		super(children);
+	}
+
+	@Override
+	Node<T> withChildren(List<Node<T>> children) {
+		return new AndNode<T>(children);
+	}
+
+	@Override
+	String getSymbol() {
+		return "&&";
+	}
+
+	@Override
+	Bitmap evaluate(EvaluationContext<T> context) {
+		return evaluateMutable(context);
+	}
+
+	@Override
+	Bitmap evaluateMutable(EvaluationContext<T> context) {
+		List<Node<T>> operands = getSortedChildren(context, true, null);
+		List<Node<T>> complemented = removeComplemented(operands);
+		if (operands.isEmpty()) {
+			// !a && !b is !(a || b)
+			Bitmap result = evaluateComplementMutable(context);
+			context.negate(result);
+			return result;
+		}
+		Bitmap result = intersect(context, operands, operands.size());
+		subtract(context, result, complemented);
+		return result;
+	}
+
+	@Override
+	boolean isComplemented() {
+		for (Node<T> child : children) {
+			if (!child.isComplemented()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	Bitmap evaluateComplementMutable(EvaluationContext<T> context) {
+		if (!isComplemented()) {
+			return super.evaluateComplementMutable(context);
+		}
+		// !(!a && !b) is a || b
+		Bitmap result = children.get(0).evaluateComplementMutable(context);
+		List<Bitmap> others = new ArrayList<>(children.size()-1);
+		for (int i = 1; i < children.size(); i++) {
+			others.add(children.get(i).evaluateComplement(context));
+		}
+		result.or(others);
+		return result;
+	}
+
+	@Override
+	int count(EvaluationContext<T> context) {
+		List<Node<T>> operands = getSortedChildren(context, true, null);
+		List<Node<T>> complemented = removeComplemented(operands);
+		Bitmap deleted = context.table.getDeletedRecords();
+		if (operands.isEmpty()) {
+			// The result is the set of records that are neither in the complement nor deleted
+			return context.table.getSize() - evaluateComplement(context).orCardinality(deleted);
+		}
+		if (operands.size()+complemented.size()==2) {
+			// a && b and a && !b are counted on the operands, without building the result
+			Bitmap first = operands.get(0).evaluate(context);
+			if (!deleted.isEmpty() && first.intersects(deleted)) {
+				first = first.clone();
+				first.andNot(deleted);
+			}
+			return complemented.isEmpty() ? first.andCardinality(operands.get(1).evaluate(context)) :
+				first.andNotCardinality(complemented.get(0).evaluateComplement(context));
+		}
+		// If there's no negation, intersect all the operands except the biggest one, then count the intersection of the result with the last operand.
+		int end = complemented.isEmpty() ? operands.size()-1 : operands.size();
+		Bitmap result = intersect(context, operands, end);
+		subtract(context, result, complemented);
+		if (result.isEmpty()) {
+			return 0;
+		}
+		if (!deleted.isEmpty()) {
+			result.andNot(deleted);
+		}
+		return end==operands.size() ? result.getCardinality() : result.andCardinality(operands.get(end).evaluate(context));
+	}
+
+	/** Removes the complements of some operands from a bitmap.
+	 * <br><i>a &amp;&amp; !b</i> is computed as <i>a andNot b</i>, without negating <i>b</i>.
+	 * @param context The evaluation context
+	 * @param result The bitmap to modify
+	 * @param complemented {@link Node#isComplemented() Complemented} operands
+	 */
+	private void subtract(EvaluationContext<T> context, Bitmap result, List<Node<T>> complemented) {
+		for (Node<T> operand : complemented) {
+			if (result.isEmpty()) {
+				return;
+			}
+			result.andNot(operand.evaluateComplement(context));
+		}
+	}
+
+	/** Intersects the first operands of a list.
+	 * @param context The evaluation context
+	 * @param operands The operands
+	 * @param end The index of the first operand that should not be intersected
+	 * @return a bitmap owned by the caller
+	 */
+	private Bitmap intersect(EvaluationContext<T> context, List<Node<T>> operands, int end) {
+		Bitmap result = operands.get(0).evaluateMutable(context);
+		List<Bitmap> pending = new ArrayList<>(end-1);
+		for (int i = 1; i < end; i++) {
+			Node<T> operand = operands.get(i);
+			if (!operand.isStored()) {
+				// Computing the operand is costly, check the intersection is not already empty
+				flush(result, pending);
+			}
+			if (result.isEmpty()) {
+				return result;
+			}
+			pending.add(operand.evaluate(context));
+		}
+		flush(result, pending);
+		return result;
+	}
+
+	private void flush(Bitmap result, List<Bitmap> pending) {
+		if (!pending.isEmpty()) {
+			result.and(pending);
+			pending.clear();
+		}
+	}
+
+	@Override
+	IdFilter getFilter(EvaluationContext<T> context) {
+		return getFilter(context, getSortedChildren(context, true, null));
+	}
+
+	private IdFilter getFilter(EvaluationContext<T> context, List<Node<T>> operands) {
+		final IdFilter[] filters = new IdFilter[operands.size()];
+		for (int i = 0; i < filters.length; i++) {
+			filters[i] = operands.get(i).getFilter(context);
+		}
+		return new IdFilter() {
+			@Override
+			public boolean accept(int id) {
+				for (IdFilter filter : filters) {
+					if (!filter.accept(id)) {
+						return false;
+					}
+				}
+				return true;
+			}
+		};
+	}
+
+	@Override
+	IntIterator getIterator(EvaluationContext<T> context) {
+		// Iterate over the smallest operand and keep the records accepted by the others
+		List<Node<T>> operands = getSortedChildren(context, true, null);
+		return new FilteredIterator(operands.get(0).getIterator(context), getFilter(context, operands.subList(1, operands.size())));
+	}
+
+	@Override
+	int estimateCardinality(EvaluationContext<T> context) {
+		int result = Integer.MAX_VALUE;
+		for (Node<T> child : children) {
+			result = Math.min(result, child.estimateCardinality(context));
+			if (result==0) {
+				break;
+			}
+		}
+		return result;
+	}
+}
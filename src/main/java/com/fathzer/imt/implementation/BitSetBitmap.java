@@ -2,8 +2,11 @@ package com.fathzer.imt.implementation;
 
 import java.io.Serializable;
 import java.util.BitSet;
+import java.util.Collection;
 
 import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.util.IntBatchIterator;
+import com.fathzer.imt.util.IntConsumer;
 import com.fathzer.imt.util.IntIterator;
 import com.fathzer.imt.util.UnexpectedCloneNotSupportedException;
 
@@ -47,18 +50,120 @@ public class BitSetBitmap implements Bitmap, Cloneable, Serializable {
 		set.and(((BitSetBitmap)bitmap).set);
 	}
 
+	@Override
+	public void or(Collection<Bitmap> bitmaps) {
+		check();
+		// BitSet operations are performed in place, word by word, there's no intermediate bitmap to save
+		for (Bitmap bitmap : bitmaps) {
+			set.or(((BitSetBitmap)bitmap).set);
+		}
+	}
+
+	@Override
+	public void and(Collection<Bitmap> bitmaps) {
+		check();
+		for (Bitmap bitmap : bitmaps) {
+			if (set.isEmpty()) {
+				break;
+			}
+			set.and(((BitSetBitmap)bitmap).set);
+		}
+	}
+
 	@Override
 	public void andNot(Bitmap bitmap) {
 		check();
 		set.andNot(((BitSetBitmap)bitmap).set);
 	}
 
+	/** {@inheritDoc}
+	 * <br>BitSet gives no access to its words, the cardinality is counted on the words arrays of the sets (see {@link BitSet#toLongArray()}),
+	 * no set is built.
+	 */
+	@Override
+	public int andCardinality(Bitmap bitmap) {
+		long[] words = set.toLongArray();
+		long[] other = ((BitSetBitmap)bitmap).set.toLongArray();
+		int result = 0;
+		for (int i = Math.min(words.length, other.length)-1; i >= 0; i--) {
+			result += Long.bitCount(words[i] & other[i]);
+		}
+		return result;
+	}
+
+	/** {@inheritDoc}
+	 * <br>The cardinality is counted on the words arrays of the sets, as in {@link #andCardinality(Bitmap)}.
+	 */
+	@Override
+	public int orCardinality(Bitmap bitmap) {
+		long[] words = set.toLongArray();
+		long[] other = ((BitSetBitmap)bitmap).set.toLongArray();
+		if (words.length<other.length) {
+			long[] tmp = words;
+			words = other;
+			other = tmp;
+		}
+		int result = 0;
+		for (int i = 0; i < other.length; i++) {
+			result += Long.bitCount(words[i] | other[i]);
+		}
+		for (int i = other.length; i < words.length; i++) {
+			result += Long.bitCount(words[i]);
+		}
+		return result;
+	}
+
+	/** {@inheritDoc}
+	 * <br>The cardinality is counted on the words arrays of the sets, as in {@link #andCardinality(Bitmap)}.
+	 */
+	@Override
+	public int andNotCardinality(Bitmap bitmap) {
+		long[] words = set.toLongArray();
+		long[] other = ((BitSetBitmap)bitmap).set.toLongArray();
+		int common = Math.min(words.length, other.length);
+		int result = 0;
+		for (int i = 0; i < common; i++) {
+			result += Long.bitCount(words[i] & ~other[i]);
+		}
+		for (int i = common; i < words.length; i++) {
+			result += Long.bitCount(words[i]);
+		}
+		return result;
+	}
+
 	@Override
 	public void not(int size) {
 		check();
 		set.flip(0, size);
 	}
 
+	@Override
+	public void flip(int from, int to) {
+		check();
+		set.flip(from, to);
+	}
+
+	@Override
+	public Bitmap getRange(int from, int to) {
+		BitSetBitmap result = new BitSetBitmap();
+		if (from<to) {
+			// BitSet.get(from, to) returns a bitset whose index 0 is <i>from</i>, copy the words at their place
+			result.set = BitSet.valueOf(toWords(from, to));
+		}
+		return result;
+	}
+
+	private long[] toWords(int from, int to) {
+		int firstWord = from/64;
+		long[] words = new long[(to+63)/64];
+		long[] range = set.get(firstWord*64, to).toLongArray();
+		System.arraycopy(range, 0, words, firstWord, range.length);
+		if (from%64!=0) {
+			words[firstWord] &= -1L << (from%64);
+		}
+		return words;
+	}
+
 	@Override
 	public boolean intersects(Bitmap bitmap) {
 		return set.intersects(((BitSetBitmap)bitmap).set);
@@ -74,6 +179,30 @@ public class BitSetBitmap implements Bitmap, Cloneable, Serializable {
 		return new BitSetIterator(set);
 	}
 
+	@Override
+	public IntBatchIterator getBatchIterator() {
+		return new IntBatchIterator() {
+			private int next = set.nextSetBit(0);
+
+			@Override
+			public int nextBatch(int[] buffer) {
+				int count = 0;
+				while (count<buffer.length && next>=0) {
+					buffer[count++] = next;
+					next = set.nextSetBit(next+1);
+				}
+				return count;
+			}
+		};
+	}
+
+	@Override
+	public void forEach(IntConsumer consumer) {
+		for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i+1)) {
+			consumer.accept(i);
+		}
+	}
+
 	@Override
 	public boolean isEmpty() {
 		return set.isEmpty();
@@ -90,6 +219,27 @@ public class BitSetBitmap implements Bitmap, Cloneable, Serializable {
 		set.set(index);
 	}
 
+	@Override
+	public void add(int[] indexes, int length) {
+		check();
+		if (length==0) {
+			return;
+		}
+		if (set.isEmpty()) {
+			// Fill the words, then build the set at once, instead of growing it bit by bit
+			long[] words = new long[(indexes[length-1]>>>6)+1];
+			for (int i = 0; i < length; i++) {
+				words[indexes[i]>>>6] |= 1L << indexes[i];
+			}
+			set = BitSet.valueOf(words);
+		} else {
+			// Merging words would cost the size of the set, not the number of indexes
+			for (int i = 0; i < length; i++) {
+				set.set(indexes[i]);
+			}
+		}
+	}
+
 	@Override
 	public void remove(int index) {
 		check();
@@ -118,6 +268,11 @@ public class BitSetBitmap implements Bitmap, Cloneable, Serializable {
 		}
 	}
 	
+	@Override
+	public void lock() {
+		isLocked = true;
+	}
+
 	/** Clones this bitmap.
 	 * @return A <b>unlocked</b> copy of this bitmap 
 	 */
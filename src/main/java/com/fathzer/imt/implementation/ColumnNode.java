@@ -0,0 +1,129 @@
+package com.fathzer.imt.implementation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.UnknownTagException;
+import com.fathzer.imt.util.IntIterator;
+
+/** A node that compares the values of a numeric column with constants.
+ * <br>Its result is the set of records whose value is in a range, computed by the table's bit-sliced index
+ * (see {@link com.fathzer.imt.TagsTable#getColumnBitMapIndex(Object, long, long)}).
+ * <br>If the table has no such column, but has a tag named as the comparison (for instance a tag <i>size=10</i>), the node refers to this tag.
+ * @param <T> The type of the table tags.
+ */
+class ColumnNode<T> extends Node<T> {
+	final T column;
+	private final String name;
+	private final long min;
+	private final long max;
+	private final String literal;
+	private final TagNode<T> tag;
+
+	/** Constructor.
+	 * @param column The column
+	 * @param name The name of the column in the expression
+	 * @param min The minimum value (inclusive)
+	 * @param max The maximum value (inclusive)
+	 * @param literal The literal that contains the comparison in the expression
+	 * @param tag The tag the literal refers to if the table has no such column
+	 */
+	ColumnNode(T column, String name, long min, long max, String literal, T tag) {
+		super();
+		this.column = column;
+		this.name = name;
+		this.min = min;
+		this.max = max;
+		this.literal = literal;
+		this.tag = new TagNode<T>(tag, literal);
+	}
+
+	/** Gets the node that refers to the literal as a tag.
+	 * @param context The evaluation context
+	 * @return a node or null if the table has the column or has no tag named as the literal.
+	 */
+	private TagNode<T> getTag(EvaluationContext<T> context) {
+		return !context.table.hasColumn(column) && context.hasTag(tag.tag, literal) ? tag : null;
+	}
+
+	@Override
+	Bitmap evaluate(EvaluationContext<T> context) {
+		TagNode<T> node = getTag(context);
+		return node==null ? context.getColumnBitmap(column, name, min, max) : node.evaluate(context);
+	}
+
+	@Override
+	Bitmap evaluateMutable(EvaluationContext<T> context) {
+		TagNode<T> node = getTag(context);
+		// The column bitmap is computed, it is already owned by the caller
+		return node==null ? context.getColumnBitmap(column, name, min, max) : node.evaluateMutable(context);
+	}
+
+	@Override
+	List<Node<T>> getChildren() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	Node<T> withChildren(List<Node<T>> children) {
+		return this;
+	}
+
+	@Override
+	void collectTags(Set<T> tags) {
+		// The table signals the changes of the column values as changes of the column's tag
+		tags.add(column);
+		tags.add(tag.tag);
+	}
+
+	@Override
+	boolean isMonotone() {
+		return true;
+	}
+
+	@Override
+	String getKey() {
+		// The key is computed before the table is known, the literal may refer to a tag, which is not equivalent to other comparisons
+		return literal;
+	}
+
+	@Override
+	int estimateCardinality(EvaluationContext<T> context) {
+		TagNode<T> node = getTag(context);
+		if (node!=null) {
+			return node.estimateCardinality(context);
+		}
+		// Computing the cardinality would require to compute the result
+		return context.getSize();
+	}
+
+	@Override
+	IdFilter getFilter(final EvaluationContext<T> context) {
+		TagNode<T> node = getTag(context);
+		if (node!=null) {
+			return node.getFilter(context);
+		}
+		if (context.failIfUnknown && !context.table.hasColumn(column)) {
+			throw new UnknownTagException(name);
+		}
+		return new IdFilter() {
+			@Override
+			public boolean accept(int id) {
+				Long value = context.table.getValue(id, column);
+				return value!=null && value>=min && value<=max;
+			}
+		};
+	}
+
+	@Override
+	IntIterator getIterator(EvaluationContext<T> context) {
+		return evaluate(context).getIterator();
+	}
+
+	@Override
+	public String toString() {
+		return literal;
+	}
+}
@@ -0,0 +1,46 @@
+package com.fathzer.imt.implementation;
+
+import java.util.NoSuchElementException;
+
+import com.fathzer.imt.util.IntIterator;
+
+/** An iterator on the integers between 0 (inclusive) and a size (exclusive) that are not returned by another iterator.
+ */
+class ComplementIterator implements IntIterator {
+	private final IntIterator excluded;
+	private final int size;
+	private int current;
+	private int nextExcluded;
+
+	/** Constructor.
+	 * @param excluded An iterator on the excluded integers, in ascending order.
+	 * @param size The size.
+	 */
+	ComplementIterator(IntIterator excluded, int size) {
+		this.excluded = excluded;
+		this.size = size;
+		this.current = 0;
+		this.nextExcluded = nextExcluded();
+	}
+
+	private int nextExcluded() {
+		return excluded.hasNext() ? excluded.next() : Integer.MAX_VALUE;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (current==nextExcluded) {
+			current++;
+			nextExcluded = nextExcluded();
+		}
+		return current<size;
+	}
+
+	@Override
+	public int next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return current++;
+	}
+}
@@ -0,0 +1,124 @@
+package com.fathzer.imt.implementation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/** A node that combines the results of other nodes with an associative and commutative operator.
+ * @param <T> The type of the table tags.
+ */
+abstract class CompositeNode<T> extends Node<T> {
+	final List<Node<T>> children;
+
+	CompositeNode(List<Node<T>> children) {
+		super();
+		this.children = children;
+	}
+
+	/** Gets the symbol of the operator.
+	 * @return a String
+	 */
+	abstract String getSymbol();
+
+	@Override
+	String getOperator() {
+		return getSymbol();
+	}
+
+	@Override
+	List<Node<T>> getChildren() {
+		return children;
+	}
+
+	@Override
+	void collectTags(Set<T> tags) {
+		for (Node<T> child : children) {
+			child.collectTags(tags);
+		}
+	}
+
+	@Override
+	boolean isMonotone() {
+		for (Node<T> child : children) {
+			if (!child.isMonotone()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	String getKey() {
+		String[] keys = new String[children.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = children.get(i).getKey();
+		}
+		// The operator is commutative, sort the operands to make the key independent of their order
+		Arrays.sort(keys);
+		return toString(keys);
+	}
+
+	/** Sorts the children of this node by their estimated cardinality.
+	 * @param context The evaluation context
+	 * @param ascending true to put the smallest children first, false to put the biggest first
+	 * @param estimates An array where to store the sorted children estimated cardinalities, or null if they are not needed.
+	 * @return a new list
+	 */
+	List<Node<T>> getSortedChildren(EvaluationContext<T> context, boolean ascending, int[] estimates) {
+		final long[] keys = new long[children.size()];
+		for (int i = 0; i < keys.length; i++) {
+			// Cardinality in the high bits, index in the low bits => sorting keys sorts children
+			long cardinality = children.get(i).estimateCardinality(context);
+			keys[i] = ((ascending ? cardinality : Integer.MAX_VALUE-cardinality) << 32) | i;
+		}
+		Arrays.sort(keys);
+		List<Node<T>> result = new ArrayList<>(keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			result.add(children.get((int)keys[i]));
+			if (estimates!=null) {
+				int cardinality = (int) (keys[i] >>> 32);
+				estimates[i] = ascending ? cardinality : Integer.MAX_VALUE-cardinality;
+			}
+		}
+		return result;
+	}
+
+	/** Removes the {@link Node#isComplemented() complemented} nodes from a list.
+	 * @param nodes The list of nodes, it is modified by this method.
+	 * @return The removed nodes, in the list order
+	 */
+	static <T> List<Node<T>> removeComplemented(List<Node<T>> nodes) {
+		List<Node<T>> result = new ArrayList<>();
+		Iterator<Node<T>> iterator = nodes.iterator();
+		while (iterator.hasNext()) {
+			Node<T> node = iterator.next();
+			if (node.isComplemented()) {
+				result.add(node);
+				iterator.remove();
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return toString(children.toArray());
+	}
+
+	private String toString(Object[] operands) {
+		StringBuilder builder = new StringBuilder();
+		builder.append('(');
+		for (int i = 0; i < operands.length; i++) {
+			if (i>0) {
+				builder.append(' ');
+				builder.append(getSymbol());
+				builder.append(' ');
+			}
+			builder.append(operands[i]);
+		}
+		builder.append(')');
+		return builder.toString();
+	}
+}
@@ -1,10 +1,12 @@
 package com.fathzer.imt.implementation;
 
 import com.fathzer.soft.javaluator.BracketPair;
+import com.fathzer.soft.javaluator.Function;
 import com.fathzer.soft.javaluator.Operator;
 import com.fathzer.soft.javaluator.Parameters;
 
 /** A default logical AbstractLogicalEvaluator that uses ! as NOT operator, &amp;&amp; as AND and || as OR.
+ * <br>It also supports the atLeast threshold function: <i>atLeast(2, a, b, c)</i> is verified by the records that have at least 2 tags among a, b and c.
  * @author Jean-Marc Astesana
  * @param <T> The type of the table tags.
  */
@@ -15,6 +17,8 @@ public abstract class DefaultEvaluator<T> extends AbstractLogicalEvaluator<T> {
   private static final Operator AND = new Operator("&&", 2, Operator.Associativity.LEFT, 2);
   /** The logical OR operator.*/
   private static final Operator OR = new Operator("||", 2, Operator.Associativity.LEFT, 1);
+  /** The threshold function.*/
+  private static final Function AT_LEAST = new Function("atLeast", 2, Integer.MAX_VALUE);
   private static final Parameters PARAMETERS;
 
 	static {
@@ -24,7 +28,9 @@ public abstract class DefaultEvaluator<T> extends AbstractLogicalEvaluator<T> {
     PARAMETERS.add(AND);
     PARAMETERS.add(OR);
     PARAMETERS.add(NEGATE);
+    PARAMETERS.add(AT_LEAST);
     PARAMETERS.addExpressionBracket(BracketPair.PARENTHESES);
+    PARAMETERS.addFunctionBracket(BracketPair.PARENTHESES);
 	}
 
 	/** Constructor.
@@ -33,6 +39,13 @@ public abstract class DefaultEvaluator<T> extends AbstractLogicalEvaluator<T> {
 		super(PARAMETERS);
 	}
 
+	/** Constructor.
+	 * @param cacheSize The maximum number of compiled expressions kept in the cache (0 to disable the cache).
+	 */
+	public DefaultEvaluator(int cacheSize) {
+		super(PARAMETERS, cacheSize);
+	}
+
 	@Override
 	protected Operator getNegate() {
 		return NEGATE;
@@ -47,4 +60,9 @@ public abstract class DefaultEvaluator<T> extends AbstractLogicalEvaluator<T> {
 	protected Operator getOr() {
 		return OR;
 	}
+
+	@Override
+	protected Function getAtLeast() {
+		return AT_LEAST;
+	}
 }
\ No newline at end of file
@@ -1,10 +1,14 @@
 package com.fathzer.imt.implementation;
 
 import java.io.Serializable;
+import java.util.Collection;
 
 import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.util.IntBatchIterator;
+import com.fathzer.imt.util.IntConsumer;
 import com.fathzer.imt.util.IntIterator;
 import com.fathzer.imt.util.UnexpectedCloneNotSupportedException;
+import com.googlecode.javaewah.ChunkIterator;
 import com.googlecode.javaewah.EWAHCompressedBitmap;
 
 /** A Bitmap backed by the excellent <a href="https://github.com/lemire/javaewah">javaewah library from D. Lemire</a>. 
@@ -47,17 +51,88 @@ public class EWAHBitmap implements Bitmap, Cloneable, Serializable {
 		set = set.and(((EWAHBitmap)bitmap).set);
 	}
 
+	@Override
+	public void or(Collection<Bitmap> bitmaps) {
+		check();
+		if (!bitmaps.isEmpty()) {
+			set = EWAHCompressedBitmap.or(toArray(bitmaps));
+		}
+	}
+
+	@Override
+	public void and(Collection<Bitmap> bitmaps) {
+		check();
+		if (!bitmaps.isEmpty()) {
+			set = EWAHCompressedBitmap.and(toArray(bitmaps));
+		}
+	}
+
+	private EWAHCompressedBitmap[] toArray(Collection<Bitmap> bitmaps) {
+		EWAHCompressedBitmap[] result = new EWAHCompressedBitmap[bitmaps.size()+1];
+		result[0] = set;
+		int i = 1;
+		for (Bitmap bitmap : bitmaps) {
+			result[i++] = ((EWAHBitmap)bitmap).set;
+		}
+		return result;
+	}
+
 	@Override
 	public void andNot(Bitmap bitmap) {
 		check();
 		set = set.andNot(((EWAHBitmap)bitmap).set);
 	}
 
+	@Override
+	public int andCardinality(Bitmap bitmap) {
+		return set.andCardinality(((EWAHBitmap)bitmap).set);
+	}
+
+	@Override
+	public int orCardinality(Bitmap bitmap) {
+		return set.orCardinality(((EWAHBitmap)bitmap).set);
+	}
+
+	@Override
+	public int andNotCardinality(Bitmap bitmap) {
+		return set.andNotCardinality(((EWAHBitmap)bitmap).set);
+	}
+
 	@Override
 	public void not(int size) {
 		check();
-		this.set.setSizeInBits(size, false);
-		this.set.not();
+		if (set.sizeInBits()>size) {
+			// The size in bits of an EWAH bitmap can't be reduced, not() would set bits after size
+			set = set.xor(range(0, size));
+		} else {
+			this.set.setSizeInBits(size, false);
+			this.set.not();
+		}
+	}
+
+	@Override
+	public void flip(int from, int to) {
+		check();
+		set = set.xor(range(from, to));
+	}
+
+	@Override
+	public Bitmap getRange(int from, int to) {
+		EWAHBitmap result = new EWAHBitmap();
+		result.set = set.and(range(from, to));
+		return result;
+	}
+
+	/** Gets a bitmap where the bits in a range are set.
+	 * @param from The first index of the range (inclusive)
+	 * @param to The end of the range (exclusive)
+	 * @return a bitmap made of (at most) two runs of empty words and two literal words.
+	 */
+	private static EWAHCompressedBitmap range(int from, int to) {
+		EWAHCompressedBitmap result = new EWAHCompressedBitmap();
+		result.setSizeInBits(from, false);
+		result.setSizeInBits(to, true);
+		return result;
 	}
 
 	@Override
@@ -87,6 +162,48 @@ public class EWAHBitmap implements Bitmap, Cloneable, Serializable {
 		};
 	}
 
+	@Override
+	public IntBatchIterator getBatchIterator() {
+		final ChunkIterator chunks = set.chunkIterator();
+		return new IntBatchIterator() {
+			private int position = 0;
+
+			@Override
+			public int nextBatch(int[] buffer) {
+				int count = 0;
+				// A chunk is a run of bits with the same value
+				while (count<buffer.length && chunks.hasNext()) {
+					int length = chunks.nextLength();
+					if (chunks.nextBit()) {
+						length = Math.min(length, buffer.length-count);
+						for (int i = 0; i < length; i++) {
+							buffer[count++] = position+i;
+						}
+					}
+					position += length;
+					chunks.move(length);
+				}
+				return count;
+			}
+		};
+	}
+
+	@Override
+	public void forEach(IntConsumer consumer) {
+		ChunkIterator chunks = set.chunkIterator();
+		int position = 0;
+		while (chunks.hasNext()) {
+			int end = position+chunks.nextLength();
+			if (chunks.nextBit()) {
+				for (int i = position; i < end; i++) {
+					consumer.accept(i);
+				}
+			}
+			position = end;
+			chunks.move();
+		}
+	}
+
 	@Override
 	public boolean isEmpty() {
 		return set.isEmpty();
@@ -103,6 +220,14 @@ public class EWAHBitmap implements Bitmap, Cloneable, Serializable {
 		set.set(index);
 	}
 
+	@Override
+	public void add(int[] indexes, int length) {
+		check();
+		for (int i = 0; i < length; i++) {
+			set.set(indexes[i]);
+		}
+	}
+
 	@Override
 	public void remove(int index) {
 		check();
@@ -131,6 +256,12 @@ public class EWAHBitmap implements Bitmap, Cloneable, Serializable {
 		}
 	}
 	
+	@Override
+	public void lock() {
+		set.trim();
+		isLocked = true;
+	}
+
 	/** Clones this bitmap.
 	 * @return A <b>unlocked</b> copy of this bitmap 
 	 */
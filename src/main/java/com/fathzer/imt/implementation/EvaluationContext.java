@@ -0,0 +1,199 @@
+package com.fathzer.imt.implementation;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinTask;
+
+import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.TagsTable;
+import com.fathzer.imt.UnknownTagException;
+
+/** The context of an evaluation of a compiled expression.
+ * @param <T> The type of the table tags.
+ */
+class EvaluationContext<T> {
+	final TagsTable<T> table;
+	final boolean failIfUnknown;
+	private final ConcurrentMap<Object, ForkJoinTask<Bitmap>> sharedResults;
+	private final int from;
+	private final int to;
+	private volatile Bitmap empty;
+
+	EvaluationContext(TagsTable<T> table, boolean failIfUnknown) {
+		this(table, failIfUnknown, false);
+	}
+
+	/** Constructor.
+	 * @param table The table
+	 * @param failIfUnknown true if evaluation should fail on unknown tags
+	 * @param shared true if the context is shared by many expressions evaluated concurrently, in which case {@link SharedNode} results are memorized.
+	 */
+	EvaluationContext(TagsTable<T> table, boolean failIfUnknown, boolean shared) {
+		super();
+		this.table = table;
+		this.failIfUnknown = failIfUnknown;
+		this.sharedResults = shared ? new ConcurrentHashMap<Object, ForkJoinTask<Bitmap>>() : null;
+		this.from = 0;
+		this.to = table.getSize();
+	}
+
+	/** Constructor of a context restricted to a range of records.
+	 * <br>Bitmaps returned by such a context contain only the records of the range (see {@link Bitmap#getRange(int, int)}).
+	 * @param table The table
+	 * @param failIfUnknown true if evaluation should fail on unknown tags
+	 * @param from The first record of the range (inclusive)
+	 * @param to The end of the range (exclusive)
+	 */
+	EvaluationContext(TagsTable<T> table, boolean failIfUnknown, int from, int to) {
+		super();
+		this.table = table;
+		this.failIfUnknown = failIfUnknown;
+		this.sharedResults = null;
+		this.from = from;
+		this.to = to;
+	}
+
+	private boolean isRange() {
+		return from!=0 || to!=table.getSize();
+	}
+
+	/** Gets the number of records in this context's range.
+	 * @return the table size if the context is not restricted to a range.
+	 */
+	int getSize() {
+		return to-from;
+	}
+
+	/** Negates a bitmap in this context's range.
+	 * @param bitmap The bitmap to negate
+	 */
+	void negate(Bitmap bitmap) {
+		if (isRange()) {
+			bitmap.flip(from, to);
+		} else {
+			bitmap.not(to);
+		}
+	}
+
+	/** Gets the results of the shared nodes.
+	 * <br>Keys are the shared nodes, or the keys of their complements.
+	 * @return a map or null if this context is not shared.
+	 */
+	ConcurrentMap<Object, ForkJoinTask<Bitmap>> getSharedResults() {
+		return sharedResults;
+	}
+
+	/** Gets the bitmap of a tag.
+	 * @param tag The tag
+	 * @param literal The literal that refers to the tag in the expression
+	 * @return The bitmap of the view named <i>literal</i>, if any, otherwise, the bitmap of the tag or an empty bitmap if the tag is unknown.
+	 * @throws UnknownTagException if the tag is unknown and failIfUnknown is true.
+	 */
+	Bitmap getBitmap(T tag, String literal) {
+		Bitmap result = getStoredBitmap(tag, literal);
+		if (result!=null && isRange()) {
+			result = result.getRange(from, to);
+		} else if (result==null) {
+			if (empty==null) {
+				empty = table.getFactory().create();
+			}
+			result = empty;
+		}
+		return result;
+	}
+
+	/** Estimates the cardinality of the bitmap of a tag in this context's range.
+	 * <br>In a range, the cardinality of the whole tag's bitmap is scaled to the range size, which avoids to copy the range.
+	 * @param tag The tag
+	 * @param literal The literal that refers to the tag in the expression
+	 * @return a positive or null integer
+	 * @throws UnknownTagException if the tag is unknown and failIfUnknown is true.
+	 */
+	int estimateCardinality(T tag, String literal) {
+		Bitmap result = getStoredBitmap(tag, literal);
+		return result==null ? 0 : estimateCardinality(result);
+	}
+
+	private Bitmap getStoredBitmap(T tag, String literal) {
+		Bitmap result = table.getView(literal);
+		if (result==null) {
+			result = table.getBitMapIndex(tag);
+		}
+		if (result==null && failIfUnknown) {
+			throw new UnknownTagException(literal);
+		}
+		return result;
+	}
+
+	private int estimateCardinality(Bitmap stored) {
+		int cardinality = stored.getCardinality();
+		return isRange() && cardinality!=0 ? (int)((long)cardinality*getSize()/table.getSize()) : cardinality;
+	}
+
+	/** Tests whether a literal refers to a view or a tag of the table.
+	 * @param tag The tag
+	 * @param literal The literal that refers to the tag in the expression
+	 * @return true if the table has a view named <i>literal</i> or has the tag.
+	 */
+	boolean hasTag(T tag, String literal) {
+		return table.getView(literal)!=null || table.getBitMapIndex(tag)!=null;
+	}
+
+	/** Gets the union of the tags that start with a prefix.
+	 * @param prefix The prefix
+	 * @return a bitmap, empty if no tag starts with the prefix (even if failIfUnknown is true).
+	 */
+	Bitmap getPrefixBitmap(String prefix) {
+		Bitmap result = table.getPrefixBitMapIndex(prefix);
+		return isRange() ? result.getRange(from, to) : result;
+	}
+
+	/** Estimates the cardinality of the union of the tags that start with a prefix in this context's range.
+	 * @param prefix The prefix
+	 * @return a positive or null integer
+	 * @see #estimateCardinality(Object, String)
+	 */
+	int estimatePrefixCardinality(String prefix) {
+		return estimateCardinality(table.getPrefixBitMapIndex(prefix));
+	}
+
+	/** Gets a copy of the union of the tags that start with a prefix that can be modified by the caller.
+	 * @param prefix The prefix
+	 * @return a mutable bitmap.
+	 */
+	Bitmap getMutablePrefixBitmap(String prefix) {
+		Bitmap result = getPrefixBitmap(prefix);
+		return isRange() ? result : result.clone();
+	}
+
+	/** Gets the records whose value in a numeric column is in a range.
+	 * @param column The column
+	 * @param name The name of the column in the expression
+	 * @param min The minimum value (inclusive)
+	 * @param max The maximum value (inclusive)
+	 * @return a mutable bitmap, empty if the column is unknown.
+	 * @throws UnknownTagException if the column is unknown and failIfUnknown is true.
+	 */
+	Bitmap getColumnBitmap(T column, String name, long min, long max) {
+		Bitmap result = table.getColumnBitMapIndex(column, min, max);
+		if (result==null) {
+			if (failIfUnknown) {
+				throw new UnknownTagException(name);
+			}
+			return table.getFactory().create();
+		}
+		return isRange() ? result.getRange(from, to) : result;
+	}
+
+	/** Gets a copy of the bitmap of a tag that can be modified by the caller.
+	 * @param tag The tag
+	 * @param literal The literal that refers to the tag in the expression
+	 * @return a mutable bitmap.
+	 * @throws UnknownTagException if the tag is unknown and failIfUnknown is true.
+	 */
+	Bitmap getMutableBitmap(T tag, String literal) {
+		Bitmap result = getBitmap(tag, literal);
+		// Ranges of tags bitmaps are already copies
+		return result==empty || !isRange() ? result.clone() : result;
+	}
+}
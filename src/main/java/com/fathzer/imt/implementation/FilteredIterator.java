@@ -0,0 +1,42 @@
+package com.fathzer.imt.implementation;
+
+import java.util.NoSuchElementException;
+
+import com.fathzer.imt.util.IntIterator;
+
+/** An iterator that returns the elements of another iterator accepted by a filter.
+ */
+class FilteredIterator implements IntIterator {
+	private final IntIterator iterator;
+	private final IdFilter filter;
+	private boolean ready;
+	private boolean hasNext;
+	private int next;
+
+	FilteredIterator(IntIterator iterator, IdFilter filter) {
+		this.iterator = iterator;
+		this.filter = filter;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (!ready) {
+			hasNext = false;
+			while (!hasNext && iterator.hasNext()) {
+				next = iterator.next();
+				hasNext = filter.accept(next);
+			}
+			ready = true;
+		}
+		return hasNext;
+	}
+
+	@Override
+	public int next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		ready = false;
+		return next;
+	}
+}
@@ -0,0 +1,11 @@
+package com.fathzer.imt.implementation;
+
+/** A filter on record ids.
+ */
+interface IdFilter {
+	/** Tests whether a record id is accepted by this filter.
+	 * @param id a record id
+	 * @return true if the id is accepted.
+	 */
+	boolean accept(int id);
+}
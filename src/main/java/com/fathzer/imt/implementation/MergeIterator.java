@@ -0,0 +1,67 @@
+package com.fathzer.imt.implementation;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import com.fathzer.imt.util.IntIterator;
+
+/** An iterator on the union of many ascending iterators.
+ * <br>Integers are returned in ascending order, without duplicates.
+ */
+class MergeIterator implements IntIterator {
+	private static final class Head {
+		private final IntIterator iterator;
+		private int value;
+
+		Head(IntIterator iterator) {
+			this.iterator = iterator;
+		}
+	}
+
+	private static final Comparator<Head> COMPARATOR = new Comparator<Head>() {
+		@Override
+		public int compare(Head o1, Head o2) {
+			return o1.value < o2.value ? -1 : (o1.value==o2.value ? 0 : 1);
+		}
+	};
+
+	private final PriorityQueue<Head> heads;
+	private int last;
+
+	MergeIterator(List<IntIterator> iterators) {
+		this.heads = new PriorityQueue<>(Math.max(1, iterators.size()), COMPARATOR);
+		for (IntIterator iterator : iterators) {
+			advance(new Head(iterator));
+		}
+		this.last = -1;
+	}
+
+	private void advance(Head head) {
+		if (head.iterator.hasNext()) {
+			head.value = head.iterator.next();
+			heads.offer(head);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		// Skip the values already returned by another iterator
+		while (!heads.isEmpty() && heads.peek().value<=last) {
+			advance(heads.poll());
+		}
+		return !heads.isEmpty();
+	}
+
+	@Override
+	public int next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Head head = heads.poll();
+		last = head.value;
+		advance(head);
+		return last;
+	}
+}
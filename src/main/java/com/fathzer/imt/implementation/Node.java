@@ -0,0 +1,134 @@
+package com.fathzer.imt.implementation;
+
+import java.util.List;
+import java.util.Set;
+
+import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.util.IntIterator;
+
+/** A node of a compiled logical expression.
+ * <br>Nodes are immutable and do not depend on a specific table, so a compiled expression can be shared
+ * between threads and evaluated on any table.
+ * @author Jean-Marc Astesana
+ * @param <T> The type of the table tags.
+ */
+public abstract class Node<T> {
+	Node() {
+		super();
+	}
+
+	/** Evaluates this node.
+	 * @param context The evaluation context
+	 * @return a bitmap. <b>Warning:</b> this bitmap may be shared with the table, it should not be modified.
+	 */
+	abstract Bitmap evaluate(EvaluationContext<T> context);
+
+	/** Gets the children of this node.
+	 * @return a list of nodes (empty if this node has no children)
+	 */
+	abstract List<Node<T>> getChildren();
+
+	/** Builds a node that applies the same operation as this on other children.
+	 * @param children The new children
+	 * @return a new node (or this if this node has no children)
+	 */
+	abstract Node<T> withChildren(List<Node<T>> children);
+
+	/** Adds the tags referenced by this node to a set.
+	 * @param tags The set to fill
+	 */
+	abstract void collectTags(Set<T> tags);
+
+	/** Tests whether this node's result only contains records that have at least one of its tags.
+	 * @return true if this node contains no negation.
+	 */
+	abstract boolean isMonotone();
+
+	/** Gets a normalized representation of this node.
+	 * <br>Unlike toString, this representation does not depend on the operands order.
+	 * @return a String
+	 */
+	abstract String getKey();
+
+	/** Gets the operator applied by this node.
+	 * @return a String, for instance <i>&amp;&amp;</i>. The default implementation returns {@link #toString()}, which suits nodes without children.
+	 */
+	String getOperator() {
+		return toString();
+	}
+
+	/** Tests whether this node's result is an existing bitmap.
+	 * @return true if {@link #evaluate(EvaluationContext)} performs no bitmap operation.
+	 */
+	boolean isStored() {
+		return false;
+	}
+
+	/** Estimates the cardinality of this node's result.
+	 * <br>This estimation is used to choose the evaluation order of operands.
+	 * @param context The evaluation context
+	 * @return a positive or null integer
+	 */
+	abstract int estimateCardinality(EvaluationContext<T> context);
+
+	/** Counts the not deleted records of this node's result.
+	 * <br>Subclasses should override this method in order to prevent building the whole result.
+	 * @param context The evaluation context
+	 * @return a positive or null integer
+	 */
+	int count(EvaluationContext<T> context) {
+		Bitmap deleted = context.table.getDeletedRecords();
+		Bitmap result = evaluate(context);
+		return deleted.isEmpty() ? result.getCardinality() : result.andNotCardinality(deleted);
+	}
+
+	/** Gets a filter that accepts the records of this node's result.
+	 * <br>The result is not computed, the filter tests each record against the operands.
+	 * @param context The evaluation context
+	 * @return a filter
+	 */
+	abstract IdFilter getFilter(EvaluationContext<T> context);
+
+	/** Gets an iterator over the records of this node's result.
+	 * <br>The result is not computed, records are found lazily, in ascending order, while the iterator is consumed.
+	 * @param context The evaluation context
+	 * @return an iterator
+	 */
+	abstract IntIterator getIterator(EvaluationContext<T> context);
+
+	/** Evaluates this node in a bitmap owned by the caller.
+	 * @param context The evaluation context
+	 * @return a mutable bitmap that can freely be modified by the caller.
+	 */
+	Bitmap evaluateMutable(EvaluationContext<T> context) {
+		return evaluate(context).clone();
+	}
+
+	/** Tests whether the complement of this node's result is cheaper to compute than the result itself.
+	 * <br>It is the case of negations: The complement of <i>!a</i> is the result of <i>a</i>.
+	 * Operators use it to replace negations by bitmap differences and to negate a bitmap only when it can't be avoided.
+	 * @return true if {@link #evaluateComplement(EvaluationContext)} negates no bitmap.
+	 */
+	boolean isComplemented() {
+		return false;
+	}
+
+	/** Evaluates the complement of this node's result.
+	 * @param context The evaluation context
+	 * @return a bitmap that contains the records, in the context's range, that are not in this node's result.
+	 * <b>Warning:</b> this bitmap may be shared with the table, it should not be modified.
+	 */
+	Bitmap evaluateComplement(EvaluationContext<T> context) {
+		return evaluateComplementMutable(context);
+	}
+
+	/** Evaluates the complement of this node's result in a bitmap owned by the caller.
+	 * @param context The evaluation context
+	 * @return a mutable bitmap that can freely be modified by the caller.
+	 */
+	Bitmap evaluateComplementMutable(EvaluationContext<T> context) {
+		Bitmap result = evaluateMutable(context);
+		context.negate(result);
+		return result;
+	}
+}
@@ -0,0 +1,117 @@
+package com.fathzer.imt.implementation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.util.IntIterator;
+
+/** A node that negates another one.
+ * @param <T> The type of the table tags.
+ */
+class NotNode<T> extends Node<T> {
+	final Node<T> child;
+
+	NotNode(Node<T> child) {
+		super();
+		this.child = child;
+	}
+
+	@Override
+	List<Node<T>> getChildren() {
+		return Collections.singletonList(child);
+	}
+
+	@Override
+	Node<T> withChildren(List<Node<T>> children) {
+		return new NotNode<T>(children.get(0));
+	}
+
+	@Override
+	void collectTags(Set<T> tags) {
+		child.collectTags(tags);
+	}
+
+	@Override
+	boolean isMonotone() {
+		return false;
+	}
+
+	@Override
+	String getOperator() {
+		return "!";
+	}
+
+	@Override
+	String getKey() {
+		return "!"+child.getKey();
+	}
+
+	@Override
+	Bitmap evaluate(EvaluationContext<T> context) {
+		return child.isComplemented() ? child.evaluateComplement(context) : evaluateMutable(context);
+	}
+
+	@Override
+	Bitmap evaluateMutable(EvaluationContext<T> context) {
+		if (child.isComplemented()) {
+			// Double negation
+			return child.evaluateComplementMutable(context);
+		}
+		Bitmap result = child.evaluateMutable(context);
+		context.negate(result);
+		return result;
+	}
+
+	@Override
+	boolean isComplemented() {
+		return !child.isComplemented();
+	}
+
+	@Override
+	Bitmap evaluateComplement(EvaluationContext<T> context) {
+		return child.evaluate(context);
+	}
+
+	@Override
+	Bitmap evaluateComplementMutable(EvaluationContext<T> context) {
+		return child.evaluateMutable(context);
+	}
+
+	@Override
+	int count(EvaluationContext<T> context) {
+		if (child.isComplemented()) {
+			return super.count(context);
+		}
+		// The result is the set of records that are neither in the child's result nor deleted
+		return context.table.getSize() - child.evaluate(context).orCardinality(context.table.getDeletedRecords());
+	}
+
+	@Override
+	int estimateCardinality(EvaluationContext<T> context) {
+		return Math.max(0, context.getSize()-child.estimateCardinality(context));
+	}
+
+	@Override
+	IdFilter getFilter(EvaluationContext<T> context) {
+		final IdFilter filter = child.getFilter(context);
+		final int size = context.table.getSize();
+		return new IdFilter() {
+			@Override
+			public boolean accept(int id) {
+				return id<size && !filter.accept(id);
+			}
+		};
+	}
+
+	@Override
+	IntIterator getIterator(EvaluationContext<T> context) {
+		return new ComplementIterator(child.getIterator(context), context.table.getSize());
+	}
+
+	@Override
+	public String toString() {
+		return "!"+child;
+	}
+}
@@ -0,0 +1,189 @@
+package com.fathzer.imt.implementation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.util.IntIterator;
+
+/** A node that performs the union of other nodes.
+ * <br>Operands are evaluated from the biggest to the smallest and the evaluation stops as soon as the union contains all the table's records.
+ * <br>Consecutive operands are merged at once with {@link Bitmap#or(java.util.Collection)}.
+ * <br>If some operands are negated, the complement of the union is computed, then negated: only one bitmap is negated.
+ * @param <T> The type of the table tags.
+ */
+class OrNode<T> extends CompositeNode<T> {
+	OrNode(List<Node<T>> children) {
+		super(children);
+	}
+
+	@Override
+	Node<T> withChildren(List<Node<T>> children) {
+		return new OrNode<T>(children);
+	}
+
+	@Override
+	String getSymbol() {
+		return "||";
+	}
+
+	@Override
+	Bitmap evaluate(EvaluationContext<T> context) {
+		return evaluateMutable(context);
+	}
+
+	@Override
+	Bitmap evaluateMutable(EvaluationContext<T> context) {
+		if (isComplemented()) {
+			// a || !b is !(b andNot a)
+			Bitmap result = evaluateComplementMutable(context);
+			context.negate(result);
+			return result;
+		}
+		int[] estimates = new int[children.size()];
+		List<Node<T>> operands = getSortedChildren(context, false, estimates);
+		return merge(context, operands, estimates, operands.size());
+	}
+
+	@Override
+	boolean isComplemented() {
+		for (Node<T> child : children) {
+			if (child.isComplemented()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	Bitmap evaluateComplementMutable(EvaluationContext<T> context) {
+		if (!isComplemented()) {
+			return super.evaluateComplementMutable(context);
+		}
+		// !(a || !b || !c) is (b && c) andNot a. The biggest negated operands have the smallest complements, intersect them first.
+		List<Node<T>> operands = getSortedChildren(context, false, null);
+		List<Node<T>> complemented = removeComplemented(operands);
+		Bitmap result = complemented.get(0).evaluateComplementMutable(context);
+		List<Bitmap> others = new ArrayList<>(complemented.size()-1);
+		for (int i = 1; i < complemented.size(); i++) {
+			others.add(complemented.get(i).evaluateComplement(context));
+		}
+		result.and(others);
+		for (Node<T> operand : operands) {
+			if (result.isEmpty()) {
+				break;
+			}
+			result.andNot(operand.evaluate(context));
+		}
+		return result;
+	}
+
+	@Override
+	int count(EvaluationContext<T> context) {
+		Bitmap deleted = context.table.getDeletedRecords();
+		if (isComplemented()) {
+			// The result is the set of records that are neither in the complement nor deleted
+			return context.table.getSize() - evaluateComplement(context).orCardinality(deleted);
+		}
+		int[] estimates = new int[children.size()];
+		List<Node<T>> operands = getSortedChildren(context, false, estimates);
+		Bitmap result;
+		Bitmap last;
+		if (operands.size()==2) {
+			// a || b is counted on the operands, without building their union
+			result = operands.get(0).evaluate(context);
+			last = operands.get(1).evaluate(context);
+			if (deleted.isEmpty() || (!result.intersects(deleted) && !last.intersects(deleted))) {
+				return result.orCardinality(last);
+			}
+			result = result.clone();
+		} else {
+			// Merge all the operands except the smallest one, then count the union of the result with the last operand.
+			result = merge(context, operands, estimates, operands.size()-1);
+			last = operands.get(operands.size()-1).evaluate(context);
+		}
+		if (deleted.isEmpty()) {
+			return result.orCardinality(last);
+		} else {
+			// |(R or L) andNot D| = |R andNot D| + |L andNot D| - |(R andNot D) and L|
+			result.andNot(deleted);
+			return result.getCardinality() + last.andNotCardinality(deleted) - result.andCardinality(last);
+		}
+	}
+
+	/** Merges the first operands of a list.
+	 * @param context The evaluation context
+	 * @param operands The operands
+	 * @param estimates The estimated cardinalities of the operands
+	 * @param end The index of the first operand that should not be merged
+	 * @return a bitmap owned by the caller
+	 */
+	private Bitmap merge(EvaluationContext<T> context, List<Node<T>> operands, int[] estimates, int end) {
+		int size = context.getSize();
+		Bitmap result = operands.get(0).evaluateMutable(context);
+		List<Bitmap> pending = new ArrayList<>(end-1);
+		long covered = estimates[0];
+		for (int i = 1; i < end; i++) {
+			// The union can't contain all the records while the sum of the operands cardinalities is lower than the table size
+			if (covered>=size) {
+				if (!pending.isEmpty()) {
+					result.or(pending);
+					pending.clear();
+				}
+				covered = result.getCardinality();
+				if (covered>=size) {
+					return result;
+				}
+			}
+			pending.add(operands.get(i).evaluate(context));
+			covered += estimates[i];
+		}
+		if (!pending.isEmpty()) {
+			result.or(pending);
+		}
+		return result;
+	}
+
+	@Override
+	IdFilter getFilter(EvaluationContext<T> context) {
+		// Test the biggest operands first, they are the most likely to accept the record
+		List<Node<T>> operands = getSortedChildren(context, false, null);
+		final IdFilter[] filters = new IdFilter[operands.size()];
+		for (int i = 0; i < filters.length; i++) {
+			filters[i] = operands.get(i).getFilter(context);
+		}
+		return new IdFilter() {
+			@Override
+			public boolean accept(int id) {
+				for (IdFilter filter : filters) {
+					if (filter.accept(id)) {
+						return true;
+					}
+				}
+				return false;
+			}
+		};
+	}
+
+	@Override
+	IntIterator getIterator(EvaluationContext<T> context) {
+		List<IntIterator> iterators = new ArrayList<>(children.size());
+		for (Node<T> child : children) {
+			iterators.add(child.getIterator(context));
+		}
+		return new MergeIterator(iterators);
+	}
+
+	@Override
+	int estimateCardinality(EvaluationContext<T> context) {
+		long result = 0;
+		int size = context.getSize();
+		for (Node<T> child : children) {
+			result += child.estimateCardinality(context);
+			if (result>=size) {
+				return size;
+			}
+		}
+		return (int) result;
+	}
+}
@@ -0,0 +1,93 @@
+package com.fathzer.imt.implementation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.util.IntIterator;
+
+/** A node that refers to all the tags that start with a prefix.
+ * <br>Its result is the union of these tags, computed and cached by the table (see {@link com.fathzer.imt.TagsTable#getPrefixBitMapIndex(String)}).
+ * <br>If the table has a tag named as the pattern (for instance a tag <i>5*</i>), the node refers to this tag only.
+ * @param <T> The type of the table tags.
+ */
+class PrefixNode<T> extends Node<T> {
+	final String prefix;
+	private final String literal;
+	private final TagNode<T> tag;
+
+	PrefixNode(String prefix, String literal, T tag) {
+		super();
+		this.prefix = prefix;
+		this.literal = literal;
+		this.tag = new TagNode<T>(tag, literal);
+	}
+
+	@Override
+	Bitmap evaluate(EvaluationContext<T> context) {
+		return context.hasTag(tag.tag, literal) ? tag.evaluate(context) : context.getPrefixBitmap(prefix);
+	}
+
+	@Override
+	Bitmap evaluateMutable(EvaluationContext<T> context) {
+		return context.hasTag(tag.tag, literal) ? tag.evaluateMutable(context) : context.getMutablePrefixBitmap(prefix);
+	}
+
+	@Override
+	List<Node<T>> getChildren() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	Node<T> withChildren(List<Node<T>> children) {
+		return this;
+	}
+
+	@Override
+	void collectTags(Set<T> tags) {
+		// The tags that start with the prefix depend on the table
+		tags.add(tag.tag);
+	}
+
+	@Override
+	boolean isMonotone() {
+		return true;
+	}
+
+	@Override
+	String getKey() {
+		return literal;
+	}
+
+	@Override
+	boolean isStored() {
+		return true;
+	}
+
+	@Override
+	int estimateCardinality(EvaluationContext<T> context) {
+		return context.hasTag(tag.tag, literal) ? tag.estimateCardinality(context) : context.estimatePrefixCardinality(prefix);
+	}
+
+	@Override
+	IdFilter getFilter(EvaluationContext<T> context) {
+		final Bitmap bitmap = evaluate(context);
+		return new IdFilter() {
+			@Override
+			public boolean accept(int id) {
+				return bitmap.contains(id);
+			}
+		};
+	}
+
+	@Override
+	IntIterator getIterator(EvaluationContext<T> context) {
+		return evaluate(context).getIterator();
+	}
+
+	@Override
+	public String toString() {
+		return literal;
+	}
+}
@@ -0,0 +1,155 @@
+package com.fathzer.imt.implementation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.QueryPlan;
+import com.fathzer.imt.util.IntIterator;
+
+/** A node that records statistics about the evaluations of another node.
+ * <br>A profiled plan is built for a single evaluation, its statistics are then converted to a {@link QueryPlan}.
+ * @param <T> The type of the table tags.
+ */
+class ProfiledNode<T> extends Node<T> {
+	private final Node<T> delegate;
+	private final List<ProfiledNode<T>> children;
+	private int evaluations;
+	private int cardinality;
+	private long sizeInBytes;
+	private long time;
+	private boolean cached;
+	private boolean complemented;
+
+	private ProfiledNode(Node<T> delegate, List<ProfiledNode<T>> children) {
+		super();
+		this.delegate = delegate;
+		this.children = children;
+		this.cardinality = -1;
+		this.sizeInBytes = -1;
+	}
+
+	/** Builds a profiled copy of a compiled expression.
+	 * @param node The root of the compiled expression
+	 * @return a new node whose descendants are all profiled.
+	 */
+	static <T> ProfiledNode<T> wrap(Node<T> node) {
+		List<ProfiledNode<T>> children = new ArrayList<>(node.getChildren().size());
+		for (Node<T> child : node.getChildren()) {
+			children.add(wrap(child));
+		}
+		return new ProfiledNode<T>(node.withChildren(new ArrayList<Node<T>>(children)), children);
+	}
+
+	/** Gets the statistics recorded by this node and its descendants.
+	 * @return a plan
+	 */
+	QueryPlan toPlan() {
+		List<QueryPlan> plans = new ArrayList<>(children.size());
+		for (ProfiledNode<T> child : children) {
+			plans.add(child.toPlan());
+		}
+		return new QueryPlan(delegate.getOperator(), plans, evaluations, cardinality, sizeInBytes, time, cached, complemented);
+	}
+
+	private Bitmap record(Bitmap result, long start, boolean cached, boolean complemented) {
+		this.time += System.nanoTime()-start;
+		this.evaluations++;
+		this.cardinality = result.getCardinality();
+		this.sizeInBytes = result.getSizeInBytes();
+		this.cached = cached;
+		this.complemented = complemented;
+		return result;
+	}
+
+	@Override
+	Bitmap evaluate(EvaluationContext<T> context) {
+		long start = System.nanoTime();
+		return record(delegate.evaluate(context), start, delegate.isStored(), false);
+	}
+
+	@Override
+	Bitmap evaluateMutable(EvaluationContext<T> context) {
+		long start = System.nanoTime();
+		// The mutable result of a stored node is a copy of an existing bitmap
+		return record(delegate.evaluateMutable(context), start, delegate.isStored(), false);
+	}
+
+	@Override
+	boolean isComplemented() {
+		return delegate.isComplemented();
+	}
+
+	@Override
+	Bitmap evaluateComplement(EvaluationContext<T> context) {
+		long start = System.nanoTime();
+		return record(delegate.evaluateComplement(context), start, false, true);
+	}
+
+	@Override
+	Bitmap evaluateComplementMutable(EvaluationContext<T> context) {
+		long start = System.nanoTime();
+		return record(delegate.evaluateComplementMutable(context), start, false, true);
+	}
+
+	@Override
+	List<Node<T>> getChildren() {
+		return delegate.getChildren();
+	}
+
+	@Override
+	Node<T> withChildren(List<Node<T>> children) {
+		return delegate.withChildren(children);
+	}
+
+	@Override
+	void collectTags(Set<T> tags) {
+		delegate.collectTags(tags);
+	}
+
+	@Override
+	boolean isMonotone() {
+		return delegate.isMonotone();
+	}
+
+	@Override
+	String getKey() {
+		return delegate.getKey();
+	}
+
+	@Override
+	String getOperator() {
+		return delegate.getOperator();
+	}
+
+	@Override
+	boolean isStored() {
+		return delegate.isStored();
+	}
+
+	@Override
+	int estimateCardinality(EvaluationContext<T> context) {
+		return delegate.estimateCardinality(context);
+	}
+
+	@Override
+	int count(EvaluationContext<T> context) {
+		return delegate.count(context);
+	}
+
+	@Override
+	IdFilter getFilter(EvaluationContext<T> context) {
+		return delegate.getFilter(context);
+	}
+
+	@Override
+	IntIterator getIterator(EvaluationContext<T> context) {
+		return delegate.getIterator(context);
+	}
+
+	@Override
+	public String toString() {
+		return delegate.toString();
+	}
+}
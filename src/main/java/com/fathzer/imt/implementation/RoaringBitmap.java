@@ -1,8 +1,17 @@
 package com.fathzer.imt.implementation;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.roaringbitmap.BatchIterator;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.OrderedWriter;
 
 import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.util.IntBatchIterator;
+import com.fathzer.imt.util.IntConsumer;
 import com.fathzer.imt.util.IntIterator;
 import com.fathzer.imt.util.UnexpectedCloneNotSupportedException;
 
@@ -46,26 +55,86 @@ public class RoaringBitmap implements Bitmap, Cloneable, Serializable {
 		this.set.and(((RoaringBitmap)bitmap).set);
 	}
 
+	@Override
+	public void or(Collection<Bitmap> bitmaps) {
+		check();
+		if (!bitmaps.isEmpty()) {
+			this.set = FastAggregation.or(toList(bitmaps).iterator());
+		}
+	}
+
+	@Override
+	public void and(Collection<Bitmap> bitmaps) {
+		check();
+		if (!bitmaps.isEmpty()) {
+			this.set = FastAggregation.and(toList(bitmaps).iterator());
+		}
+	}
+
+	private List<org.roaringbitmap.RoaringBitmap> toList(Collection<Bitmap> bitmaps) {
+		List<org.roaringbitmap.RoaringBitmap> result = new ArrayList<>(bitmaps.size()+1);
+		result.add(set);
+		for (Bitmap bitmap : bitmaps) {
+			result.add(((RoaringBitmap)bitmap).set);
+		}
+		return result;
+	}
+
 	@Override
 	public void andNot(Bitmap bitmap) {
 		check();
 		set.andNot(((RoaringBitmap)bitmap).set);
 	}
 
+	@Override
+	public int andCardinality(Bitmap bitmap) {
+		return org.roaringbitmap.RoaringBitmap.andCardinality(set, ((RoaringBitmap)bitmap).set);
+	}
+
+	@Override
+	public int orCardinality(Bitmap bitmap) {
+		return org.roaringbitmap.RoaringBitmap.orCardinality(set, ((RoaringBitmap)bitmap).set);
+	}
+
+	@Override
+	public int andNotCardinality(Bitmap bitmap) {
+		return org.roaringbitmap.RoaringBitmap.andNotCardinality(set, ((RoaringBitmap)bitmap).set);
+	}
+
 	@Override
 	public void not(int size) {
 		check();
 		this.set.flip(0, size);
 	}
 
+	@Override
+	public void flip(int from, int to) {
+		check();
+		this.set.flip((long)from, (long)to);
+	}
+
+	@Override
+	public Bitmap getRange(int from, int to) {
+		org.roaringbitmap.RoaringBitmap range = new org.roaringbitmap.RoaringBitmap();
+		range.add((long)from, (long)to);
+		RoaringBitmap result = new RoaringBitmap();
+		// The intersection skips the containers out of the range
+		result.set = org.roaringbitmap.RoaringBitmap.and(set, range);
+		return result;
+	}
+
 	@Override
 	public boolean intersects(Bitmap bitmap) {
 		return org.roaringbitmap.RoaringBitmap.intersects(set, ((RoaringBitmap)bitmap).set);
 	}
 
+	/** {@inheritDoc}
+	 * <br>Containers are also converted to run containers when it saves memory.
+	 */
 	@Override
 	public void trim() {
 		check();
+		set.runOptimize();
 		set.trim();
 	}
 	
@@ -85,6 +154,27 @@ public class RoaringBitmap implements Bitmap, Cloneable, Serializable {
 		};
 	}
 
+	@Override
+	public IntBatchIterator getBatchIterator() {
+		final BatchIterator iter = set.getBatchIterator();
+		return new IntBatchIterator() {
+			@Override
+			public int nextBatch(int[] buffer) {
+				return iter.hasNext() ? iter.nextBatch(buffer) : 0;
+			}
+		};
+	}
+
+	@Override
+	public void forEach(final IntConsumer consumer) {
+		set.forEach(new org.roaringbitmap.IntConsumer() {
+			@Override
+			public void accept(int value) {
+				consumer.accept(value);
+			}
+		});
+	}
+
 	@Override
 	public boolean isEmpty() {
 		return set.isEmpty();
@@ -101,6 +191,24 @@ public class RoaringBitmap implements Bitmap, Cloneable, Serializable {
 		set.add(index);
 	}
 
+	@Override
+	public void add(int[] indexes, int length) {
+		check();
+		if (set.isEmpty()) {
+			// The writer builds the containers one after the other, without copying the indexes.
+			// It appends the containers to the bitmap, so it can only be used on an empty one.
+			OrderedWriter writer = new OrderedWriter(set);
+			for (int i = 0; i < length; i++) {
+				writer.add(indexes[i]);
+			}
+			writer.flush();
+		} else {
+			for (int i = 0; i < length; i++) {
+				set.add(indexes[i]);
+			}
+		}
+	}
+
 	@Override
 	public void remove(int index) {
 		check();
@@ -124,6 +232,12 @@ public class RoaringBitmap implements Bitmap, Cloneable, Serializable {
 		}
 	}
 	
+	@Override
+	public void lock() {
+		set.trim();
+		isLocked = true;
+	}
+
 	/** Clones this bitmap.
 	 * @return A <b>unlocked</b> copy of this bitmap 
 	 */
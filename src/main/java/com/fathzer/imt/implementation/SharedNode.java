@@ -0,0 +1,144 @@
+package com.fathzer.imt.implementation;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.util.IntIterator;
+
+/** A node whose result is shared by many expressions evaluated together.
+ * <br>The first evaluation computes the result, the next ones (possibly in other threads) wait for it and reuse it.
+ * @param <T> The type of the table tags.
+ */
+class SharedNode<T> extends Node<T> {
+	private final Node<T> delegate;
+	/** The key of the complement of this node's result in the shared results. */
+	private final Object complementKey;
+
+	SharedNode(Node<T> delegate) {
+		super();
+		this.delegate = delegate;
+		this.complementKey = new Object();
+	}
+
+	@Override
+	Bitmap evaluate(EvaluationContext<T> context) {
+		if (context.getSharedResults()==null) {
+			return delegate.evaluate(context);
+		}
+		return getShared(this, false, context);
+	}
+
+	@Override
+	Bitmap evaluateMutable(EvaluationContext<T> context) {
+		// The shared result is used by other expressions, it can't be returned to a caller that will modify it
+		return context.getSharedResults()==null ? delegate.evaluateMutable(context) : evaluate(context).clone();
+	}
+
+	@Override
+	boolean isComplemented() {
+		return delegate.isComplemented();
+	}
+
+	@Override
+	Bitmap evaluateComplement(EvaluationContext<T> context) {
+		if (context.getSharedResults()==null) {
+			return delegate.evaluateComplement(context);
+		}
+		// When the delegate is not complemented, its complement is derived from the shared result
+		return delegate.isComplemented() ? getShared(complementKey, true, context) : super.evaluateComplement(context);
+	}
+
+	@Override
+	Bitmap evaluateComplementMutable(EvaluationContext<T> context) {
+		if (context.getSharedResults()==null) {
+			return delegate.evaluateComplementMutable(context);
+		}
+		return delegate.isComplemented() ? evaluateComplement(context).clone() : super.evaluateComplementMutable(context);
+	}
+
+	/** Gets a shared result.
+	 * <br>The first call computes the result, the next ones wait for it.
+	 * @param key The key of the result in the context's shared results
+	 * @param complement true to compute the complement of the delegate's result, false to compute its result.
+	 * @param context The evaluation context
+	 * @return a bitmap that should not be modified
+	 */
+	private Bitmap getShared(Object key, final boolean complement, final EvaluationContext<T> context) {
+		ConcurrentMap<Object, ForkJoinTask<Bitmap>> results = context.getSharedResults();
+		ForkJoinTask<Bitmap> task = results.get(key);
+		if (task==null) {
+			ForkJoinTask<Bitmap> newTask = new RecursiveTask<Bitmap>() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected Bitmap compute() {
+					return complement ? delegate.evaluateComplement(context) : delegate.evaluate(context);
+				}
+			};
+			task = results.putIfAbsent(key, newTask);
+			if (task==null) {
+				return newTask.invoke();
+			}
+		}
+		return task.join();
+	}
+
+	@Override
+	List<Node<T>> getChildren() {
+		return delegate.getChildren();
+	}
+
+	@Override
+	Node<T> withChildren(List<Node<T>> children) {
+		return new SharedNode<T>(delegate.withChildren(children));
+	}
+
+	@Override
+	void collectTags(Set<T> tags) {
+		delegate.collectTags(tags);
+	}
+
+	@Override
+	boolean isMonotone() {
+		return delegate.isMonotone();
+	}
+
+	@Override
+	String getOperator() {
+		return delegate.getOperator();
+	}
+
+	@Override
+	String getKey() {
+		return delegate.getKey();
+	}
+
+	@Override
+	int estimateCardinality(EvaluationContext<T> context) {
+		return delegate.estimateCardinality(context);
+	}
+
+	@Override
+	int count(EvaluationContext<T> context) {
+		return delegate.count(context);
+	}
+
+	@Override
+	IdFilter getFilter(EvaluationContext<T> context) {
+		return delegate.getFilter(context);
+	}
+
+	@Override
+	IntIterator getIterator(EvaluationContext<T> context) {
+		return delegate.getIterator(context);
+	}
+
+	@Override
+	public String toString() {
+		return delegate.toString();
+	}
+}
@@ -48,19 +48,22 @@ public abstract class SimpleTagsTableFactory implements TagsTableFactory<String>
 	protected SimpleTagsTableFactory() {
 	}
 
+	/** The evaluator shared by all the factories.
+	 * <br>It is thread safe and its compiled expressions cache does not depend on the bitmap implementation.
+	 */
+	private static final Evaluator<String> EVALUATOR = new DefaultEvaluator<String>() {
+		@Override
+		protected String stringToTag(String string) {
+			return string;
+		}
+	};
+
+	/** {@inheritDoc}
+	 * <br>All the SimpleTagsTableFactory instances share the same evaluator (and its compiled expressions cache).
+	 */
 	@Override
 	public Evaluator<String> getEvaluator() {
-		return new ThreadSafeEvaluator<String>() {
-			@Override
-			protected Evaluator<String> buildUnsafeEvaluator() {
-				return new DefaultEvaluator<String>() {
-					@Override
-					protected String stringToTag(String string) {
-						return string;
-					}
-				};
-			}
-		};
+		return EVALUATOR;
 	}
 
 	@Override
@@ -0,0 +1,88 @@
+package com.fathzer.imt.implementation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.util.IntIterator;
+
+/** A node that refers to a tag.
+ * @param <T> The type of the table tags.
+ */
+class TagNode<T> extends Node<T> {
+	final T tag;
+	private final String literal;
+
+	TagNode(T tag, String literal) {
+		super();
+		this.tag = tag;
+		this.literal = literal;
+	}
+
+	@Override
+	Bitmap evaluate(EvaluationContext<T> context) {
+		return context.getBitmap(tag, literal);
+	}
+
+	@Override
+	Bitmap evaluateMutable(EvaluationContext<T> context) {
+		return context.getMutableBitmap(tag, literal);
+	}
+
+	@Override
+	List<Node<T>> getChildren() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	Node<T> withChildren(List<Node<T>> children) {
+		return this;
+	}
+
+	@Override
+	void collectTags(Set<T> tags) {
+		tags.add(tag);
+	}
+
+	@Override
+	boolean isMonotone() {
+		return true;
+	}
+
+	@Override
+	String getKey() {
+		return literal;
+	}
+
+	@Override
+	boolean isStored() {
+		return true;
+	}
+
+	@Override
+	int estimateCardinality(EvaluationContext<T> context) {
+		return context.estimateCardinality(tag, literal);
+	}
+
+	@Override
+	IdFilter getFilter(EvaluationContext<T> context) {
+		final Bitmap bitmap = evaluate(context);
+		return new IdFilter() {
+			@Override
+			public boolean accept(int id) {
+				return bitmap.contains(id);
+			}
+		};
+	}
+
+	@Override
+	IntIterator getIterator(EvaluationContext<T> context) {
+		return evaluate(context).getIterator();
+	}
+
+	@Override
+	public String toString() {
+		return literal;
+	}
+}
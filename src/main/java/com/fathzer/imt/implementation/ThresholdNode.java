@@ -0,0 +1,210 @@
+package com.fathzer.imt.implementation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.util.IntIterator;
+
+/** A node whose result contains the records that are in the results of at least a given number of its children.
+ * <br>The number of children that contain each record is computed with a bit-sliced adder: the counts are stored in binary,
+ * one bitmap per bit, and each child's result is added to them with a few xor and and operations.
+ * The records whose count reaches the threshold are then found by comparing the count slices with the threshold.
+ * <br>The number of bitmap operations is proportional to n*log(n), where n is the number of children, instead of the number of
+ * combinations of children an equivalent expression would contain.
+ * @param <T> The type of the table tags.
+ */
+class ThresholdNode<T> extends Node<T> {
+	final int threshold;
+	final List<Node<T>> children;
+
+	/** Constructor.
+	 * @param threshold The minimum number of children that should contain a record
+	 * @param children The children
+	 */
+	ThresholdNode(int threshold, List<Node<T>> children) {
+		super();
+		this.threshold = threshold;
+		this.children = children;
+	}
+
+	@Override
+	List<Node<T>> getChildren() {
+		return children;
+	}
+
+	@Override
+	Node<T> withChildren(List<Node<T>> children) {
+		return new ThresholdNode<T>(threshold, children);
+	}
+
+	@Override
+	void collectTags(Set<T> tags) {
+		for (Node<T> child : children) {
+			child.collectTags(tags);
+		}
+	}
+
+	@Override
+	boolean isMonotone() {
+		if (threshold<=0) {
+			// All the records match
+			return false;
+		}
+		for (Node<T> child : children) {
+			if (!child.isMonotone()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	String getOperator() {
+		return "atLeast("+threshold+")";
+	}
+
+	@Override
+	String getKey() {
+		String[] keys = new String[children.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = children.get(i).getKey();
+		}
+		// The result does not depend on the children order
+		Arrays.sort(keys);
+		return toString(keys);
+	}
+
+	@Override
+	Bitmap evaluate(EvaluationContext<T> context) {
+		return evaluateMutable(context);
+	}
+
+	@Override
+	Bitmap evaluateMutable(EvaluationContext<T> context) {
+		if (threshold<=0) {
+			Bitmap result = context.table.getFactory().create();
+			context.negate(result);
+			return result;
+		} else if (threshold>children.size()) {
+			return context.table.getFactory().create();
+		}
+		List<Bitmap> counts = new ArrayList<>();
+		for (Node<T> child : children) {
+			add(counts, child.evaluate(context));
+		}
+		return atLeast(counts, context);
+	}
+
+	/** Adds a bitmap to counts.
+	 * @param counts The counts slices, from the lowest bit to the highest one.
+	 * @param bitmap The bitmap to add. It is not modified.
+	 */
+	private static void add(List<Bitmap> counts, Bitmap bitmap) {
+		Bitmap carry = bitmap;
+		for (int i = 0; i < counts.size() && !carry.isEmpty(); i++) {
+			Bitmap slice = counts.get(i);
+			Bitmap next = slice.clone();
+			next.and(carry);
+			slice.xor(carry);
+			carry = next;
+		}
+		if (!carry.isEmpty()) {
+			counts.add(carry==bitmap ? bitmap.clone() : carry);
+		}
+	}
+
+	/** Gets the records whose count is greater than or equal to the threshold.
+	 * @param counts The counts slices, from the lowest bit to the highest one.
+	 * @param context The evaluation context
+	 * @return a new mutable bitmap
+	 */
+	private Bitmap atLeast(List<Bitmap> counts, EvaluationContext<T> context) {
+		if (counts.size()<Integer.SIZE-Integer.numberOfLeadingZeros(threshold)) {
+			// No count can reach the threshold
+			return context.table.getFactory().create();
+		}
+		// Records with a count of at least 1
+		Bitmap equals = counts.get(0).clone();
+		equals.or(counts.subList(1, counts.size()));
+		Bitmap result = context.table.getFactory().create();
+		for (int i = counts.size()-1; i>=0; i--) {
+			Bitmap slice = counts.get(i);
+			if ((threshold & (1<<i))==0) {
+				// Records with this bit set are greater than the threshold
+				Bitmap greater = equals.clone();
+				greater.and(slice);
+				result.or(greater);
+				equals.andNot(slice);
+			} else {
+				equals.and(slice);
+			}
+		}
+		result.or(equals);
+		return result;
+	}
+
+	@Override
+	int estimateCardinality(EvaluationContext<T> context) {
+		if (threshold<=0) {
+			return context.getSize();
+		}
+		long sum = 0;
+		for (Node<T> child : children) {
+			sum += child.estimateCardinality(context);
+		}
+		return (int) Math.min(context.getSize(), sum/threshold);
+	}
+
+	@Override
+	IdFilter getFilter(EvaluationContext<T> context) {
+		final IdFilter[] filters = new IdFilter[children.size()];
+		for (int i = 0; i < filters.length; i++) {
+			filters[i] = children.get(i).getFilter(context);
+		}
+		final int size = context.table.getSize();
+		return new IdFilter() {
+			@Override
+			public boolean accept(int id) {
+				if (id>=size) {
+					return false;
+				}
+				int count = 0;
+				for (int i = 0; i < filters.length && count<threshold; i++) {
+					// Stop as soon as the threshold can't be reached
+					if (count+filters.length-i<threshold) {
+						return false;
+					}
+					if (filters[i].accept(id)) {
+						count++;
+					}
+				}
+				return count>=threshold;
+			}
+		};
+	}
+
+	@Override
+	IntIterator getIterator(EvaluationContext<T> context) {
+		return evaluate(context).getIterator();
+	}
+
+	@Override
+	public String toString() {
+		return toString(children.toArray());
+	}
+
+	private String toString(Object[] operands) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("atLeast(");
+		builder.append(threshold);
+		for (Object operand : operands) {
+			builder.append(", ");
+			builder.append(operand);
+		}
+		builder.append(')');
+		return builder.toString();
+	}
+}
@@ -0,0 +1,12 @@
+package com.fathzer.imt.util;
+
+/** An iterator on int that returns many elements at once.
+ * <br>It is faster than {@link IntIterator} when a lot of elements are read.
+ */
+public interface IntBatchIterator {
+	/** Gets the next elements.
+	 * @param buffer The array where to store the elements.
+	 * @return The number of elements stored at the beginning of <i>buffer</i>, 0 if no element remains.
+	 */
+	int nextBatch(int[] buffer);
+}
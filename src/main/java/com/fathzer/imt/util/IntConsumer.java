@@ -0,0 +1,10 @@
+package com.fathzer.imt.util;
+
+/** An operation that accepts an int.
+ */
+public interface IntConsumer {
+	/** Performs this operation on an int.
+	 * @param value an int.
+	 */
+	void accept(int value);
+}
@@ -0,0 +1,137 @@
+package com.fathzer.imt.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** A thread safe cache with a bounded number of entries.
+ * <br>Entries are stored in a {@link ConcurrentHashMap}, so lookups do not lock the cache and concurrent threads do not serialize on it.
+ * <br>When the cache is full, the least recently used entries are discarded. The order is approximate: the access time of an entry is
+ * updated at most once per millisecond, in order not to write shared memory on each lookup.
+ * @param <K> The type of keys
+ * @param <V> The type of values
+ */
+public class LRUCache<K, V> {
+	/** The minimum delay, in nanoseconds, between two updates of the access time of an entry. */
+	private static final long TOUCH_PERIOD = 1000000L;
+
+	private static final class Entry<V> {
+		private final V value;
+		private volatile long lastAccess;
+
+		Entry(V value, long lastAccess) {
+			this.value = value;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	/** An entry that may be discarded, with its access time when the eviction started. */
+	private static final class Candidate<K, V> implements Comparable<Candidate<K, V>> {
+		private final K key;
+		private final Entry<V> entry;
+		private final long lastAccess;
+
+		Candidate(K key, Entry<V> entry) {
+			this.key = key;
+			this.entry = entry;
+			this.lastAccess = entry.lastAccess;
+		}
+
+		@Override
+		public int compareTo(Candidate<K, V> o) {
+			return Long.compare(lastAccess, o.lastAccess);
+		}
+	}
+
+	private final int capacity;
+	private final ConcurrentMap<K, Entry<V>> map;
+	private final Object evictionLock;
+
+	/** Constructor.
+	 * @param capacity The maximum number of entries in the cache.
+	 * @throws IllegalArgumentException if capacity is negative
+	 */
+	public LRUCache(final int capacity) {
+		if (capacity<0) {
+			throw new IllegalArgumentException();
+		}
+		this.capacity = capacity;
+		this.map = new ConcurrentHashMap<>();
+		this.evictionLock = new Object();
+	}
+
+	/** Gets the value associated with a key.
+	 * @param key The key
+	 * @return The value or null if the key is not in the cache.
+	 */
+	public V get(K key) {
+		Entry<V> entry = map.get(key);
+		if (entry==null) {
+			return null;
+		}
+		long now = System.nanoTime();
+		if (now-entry.lastAccess>TOUCH_PERIOD) {
+			entry.lastAccess = now;
+		}
+		return entry.value;
+	}
+
+	/** Puts a value in the cache.
+	 * @param key The key
+	 * @param value The value
+	 */
+	public void put(K key, V value) {
+		if (capacity==0) {
+			return;
+		}
+		map.put(key, new Entry<V>(value, System.nanoTime()));
+		if (map.size()>capacity) {
+			evict();
+		}
+	}
+
+	/** Discards the least recently used entries.
+	 * <br>An eighth of the capacity is discarded at once, so that the entries are not sorted on every put of a full cache.
+	 */
+	private void evict() {
+		synchronized (evictionLock) {
+			int count = map.size()-capacity;
+			if (count<=0) {
+				return;
+			}
+			count += capacity/8;
+			// Access times are copied, they may change while the entries are sorted
+			List<Candidate<K, V>> candidates = new ArrayList<>(map.size());
+			for (Map.Entry<K, Entry<V>> entry : map.entrySet()) {
+				candidates.add(new Candidate<K, V>(entry.getKey(), entry.getValue()));
+			}
+			Collections.sort(candidates);
+			for (int i = 0; i < count && i < candidates.size(); i++) {
+				map.remove(candidates.get(i).key, candidates.get(i).entry);
+			}
+		}
+	}
+
+	/** Removes all the entries of this cache.
+	 */
+	public void clear() {
+		map.clear();
+	}
+
+	/** Gets the number of entries in this cache.
+	 * @return a positive or null integer
+	 */
+	public int size() {
+		return map.size();
+	}
+
+	/** Gets the maximum number of entries of this cache.
+	 * @return a positive or null integer
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+}
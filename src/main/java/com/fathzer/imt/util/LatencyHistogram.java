@@ -0,0 +1,92 @@
+package com.fathzer.imt.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A lock-free histogram of durations.
+ * <br>Durations are counted in buckets whose bounds are powers of 2 nanoseconds: the bucket <i>i</i> contains the durations
+ * in [2<sup>i-1</sup>, 2<sup>i</sup>[ (bucket 0 contains the null durations). Percentiles are known within a factor 2, which is enough to monitor latencies.
+ * <br>Like {@link StripedCounter}, the buckets are striped by thread.
+ * <br>This class is thread safe.
+ */
+public class LatencyHistogram {
+	/** The number of buckets. */
+	public static final int BUCKETS = Long.SIZE;
+
+	private final AtomicLongArray cells;
+	private final int mask;
+	private final StripedCounter total;
+
+	/** Constructor.
+	 */
+	public LatencyHistogram() {
+		this.mask = StripedCounter.getStripes()-1;
+		// Stripes are BUCKETS longs long, so they are on different cache lines
+		this.cells = new AtomicLongArray((mask+1)*BUCKETS);
+		this.total = new StripedCounter();
+	}
+
+	/** Records a duration.
+	 * @param nanos The duration in nanoseconds. Negative durations are recorded as null durations.
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		int bucket = Long.SIZE-Long.numberOfLeadingZeros(nanos);
+		cells.incrementAndGet(StripedCounter.getStripe(mask)*BUCKETS + Math.min(bucket, BUCKETS-1));
+		total.add(nanos);
+	}
+
+	/** Gets the number of durations in each bucket.
+	 * @return an array of {@link #BUCKETS} longs
+	 */
+	public long[] getCounts() {
+		long[] result = new long[BUCKETS];
+		for (int i = 0; i < cells.length(); i++) {
+			result[i%BUCKETS] += cells.get(i);
+		}
+		return result;
+	}
+
+	/** Gets the number of recorded durations.
+	 * @return a long
+	 */
+	public long getCount() {
+		long result = 0;
+		for (long count : getCounts()) {
+			result += count;
+		}
+		return result;
+	}
+
+	/** Gets the mean duration.
+	 * @return a number of nanoseconds, 0 if no duration was recorded.
+	 */
+	public double getMean() {
+		long count = getCount();
+		return count==0 ? 0 : (double)total.get()/count;
+	}
+
+	/** Gets a percentile of the durations.
+	 * @param percentile The percentile, between 0 and 100
+	 * @return The upper bound, in nanoseconds, of the bucket that contains the percentile, or 0 if no duration was recorded.
+	 * @throws IllegalArgumentException if percentile is not between 0 and 100.
+	 */
+	public long getPercentile(double percentile) {
+		if (percentile<0 || percentile>100) {
+			throw new IllegalArgumentException();
+		}
+		long[] counts = getCounts();
+		long count = 0;
+		for (long c : counts) {
+			count += c;
+		}
+		long rank = (long) Math.ceil(count*percentile/100);
+		long cumulated = 0;
+		for (int i = 0; i < counts.length; i++) {
+			cumulated += counts[i];
+			if (cumulated>=rank && cumulated>0) {
+				return i==BUCKETS-1 ? Long.MAX_VALUE : (1L<<i)-1;
+			}
+		}
+		return 0;
+	}
+}
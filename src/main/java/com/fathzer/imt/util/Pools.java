@@ -0,0 +1,39 @@
+package com.fathzer.imt.util;
+
+import java.util.concurrent.ForkJoinPool;
+
+/** The thread pools used by the parallel operations of this library.
+ */
+public final class Pools {
+	private static volatile ForkJoinPool forkJoinPool;
+
+	private Pools() {
+		super();
+	}
+
+	/** Gets the fork/join pool used by parallel operations.
+	 * <br>By default, a pool with a parallelism level equal to the number of available processors is lazily created.
+	 * @return a ForkJoinPool
+	 */
+	public static ForkJoinPool getForkJoinPool() {
+		if (forkJoinPool==null) {
+			synchronized (Pools.class) {
+				if (forkJoinPool==null) {
+					forkJoinPool = new ForkJoinPool();
+				}
+			}
+		}
+		return forkJoinPool;
+	}
+
+	/** Sets the fork/join pool used by parallel operations.
+	 * @param pool The pool to use
+	 * @throws IllegalArgumentException if pool is null
+	 */
+	public static void setForkJoinPool(ForkJoinPool pool) {
+		if (pool==null) {
+			throw new IllegalArgumentException();
+		}
+		forkJoinPool = pool;
+	}
+}
@@ -0,0 +1,66 @@
+package com.fathzer.imt.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A lock-free counter for values that are incremented by many threads and rarely read.
+ * <br>The counter is split in stripes, each thread adds to the stripe selected by its id, so that threads rarely contend on the same memory location.
+ * Reading the counter sums the stripes.
+ * <br>This class is thread safe.
+ */
+public class StripedCounter {
+	/** The number of longs between two stripes, in order to put them on different cache lines. */
+	static final int PADDING = 8;
+
+	private final AtomicLongArray cells;
+	private final int mask;
+
+	/** Constructor.
+	 * <br>The number of stripes depends on the number of available processors.
+	 */
+	public StripedCounter() {
+		this.mask = getStripes()-1;
+		this.cells = new AtomicLongArray((mask+1)*PADDING);
+	}
+
+	/** Gets the default number of stripes.
+	 * @return a power of 2 greater than or equal to twice the number of processors.
+	 */
+	static int getStripes() {
+		return Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()*2-1))<<1;
+	}
+
+	/** Gets the stripe of the current thread.
+	 * @param mask The number of stripes minus one
+	 * @return an integer between 0 and mask
+	 */
+	static int getStripe(int mask) {
+		// Thread ids are often consecutive, mix their bits
+		long id = Thread.currentThread().getId();
+		return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+	}
+
+	/** Adds a value to this counter.
+	 * @param value The value to add
+	 */
+	public void add(long value) {
+		cells.getAndAdd(getStripe(mask)*PADDING, value);
+	}
+
+	/** Increments this counter.
+	 */
+	public void increment() {
+		add(1);
+	}
+
+	/** Gets the value of this counter.
+	 * <br>The value is not a snapshot: concurrent additions may or may not be included.
+	 * @return a long
+	 */
+	public long get() {
+		long result = 0;
+		for (int i = 0; i < cells.length(); i += PADDING) {
+			result += cells.get(i);
+		}
+		return result;
+	}
+}
@@ -2,9 +2,18 @@ package com.fathzer.imt;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fathzer.imt.util.IntBatchIterator;
+import com.fathzer.imt.util.IntConsumer;
+import com.fathzer.imt.util.IntIterator;
+
 public abstract class AbstractBitmapTest {
 	private TagsTableFactory<? extends Object> factory;
 	private Bitmap locked;
@@ -47,6 +56,179 @@ public abstract class AbstractBitmapTest {
 		assertEquals(1, b.getCardinality());
 	}
 	
+	@Test
+	public void doTestAggregation() {
+		Bitmap b1 = factory.create();
+		b1.add(1);
+		b1.add(2);
+		b1.add(100000);
+		Bitmap b2 = factory.create();
+		b2.add(2);
+		b2.add(3);
+		b2.add(100000);
+		Bitmap b3 = factory.create();
+		b3.add(2);
+		b3.add(200000);
+		b3.add(100000);
+		
+		Bitmap or = factory.create();
+		or.or(Arrays.asList(b1, b2, b3));
+		assertEquals(5, or.getCardinality());
+		assertEquals(3, b1.getCardinality());
+		or.or(Collections.<Bitmap>emptyList());
+		assertEquals(5, or.getCardinality());
+		
+		Bitmap and = b1.clone();
+		and.and(Arrays.asList(b2, b3));
+		assertEquals(2, and.getCardinality());
+		assertTrue(and.contains(2));
+		assertTrue(and.contains(100000));
+		assertEquals(3, b2.getCardinality());
+		and.and(Arrays.asList(factory.create(), b3));
+		assertTrue(and.isEmpty());
+	}
+	
+	@Test
+	public void doTestCardinalities() {
+		Bitmap b1 = factory.create();
+		b1.add(1);
+		b1.add(2);
+		b1.add(100000);
+		Bitmap b2 = factory.create();
+		b2.add(2);
+		b2.add(3);
+		b2.add(100000);
+		b2.add(200000);
+		assertEquals(2, b1.andCardinality(b2));
+		assertEquals(5, b1.orCardinality(b2));
+		assertEquals(5, b2.orCardinality(b1));
+		assertEquals(1, b1.andNotCardinality(b2));
+		assertEquals(2, b2.andNotCardinality(b1));
+		assertEquals(0, b1.andCardinality(factory.create()));
+		assertEquals(3, b1.orCardinality(factory.create()));
+		assertEquals(3, b1.andNotCardinality(factory.create()));
+		assertEquals(3, b1.getCardinality());
+		assertEquals(4, b2.getCardinality());
+	}
+	
+	@Test
+	public void doTestRanges() {
+		Bitmap b = factory.create();
+		b.add(1);
+		b.add(70);
+		b.add(65536);
+		b.add(200000);
+		Bitmap range = b.getRange(2, 65537);
+		assertEquals(2, range.getCardinality());
+		assertTrue(range.contains(70));
+		assertTrue(range.contains(65536));
+		assertEquals(0, b.getRange(65537, 200000).getCardinality());
+		range.add(3);
+		assertEquals(4, b.getCardinality());
+		range.flip(60, 72);
+		assertEquals(13, range.getCardinality());
+		assertFalse(range.contains(70));
+		assertTrue(range.contains(71));
+		// Ranges of a bitmap can be merged
+		Bitmap merged = b.getRange(0, 65536);
+		merged.or(Arrays.asList(b.getRange(65536, 131072), b.getRange(131072, 262144)));
+		assertEquals(4, merged.getCardinality());
+		assertEquals(4, merged.andCardinality(b));
+	}
+
+	@Test
+	public void doTestBatchIteration() {
+		Bitmap b = factory.create();
+		b.add(new int[] {0, 1, 2, 3, 64, 65, 100000, 100001, 100002, 1000000, -1}, 10);
+		assertEquals(10, b.getCardinality());
+		final List<Integer> expected = new ArrayList<>();
+		IntIterator iterator = b.getIterator();
+		while (iterator.hasNext()) {
+			expected.add(iterator.next());
+		}
+		// Use a buffer smaller than runs of set bits
+		List<Integer> batches = new ArrayList<>();
+		IntBatchIterator batchIterator = b.getBatchIterator();
+		int[] buffer = new int[2];
+		for (int count = batchIterator.nextBatch(buffer); count>0; count = batchIterator.nextBatch(buffer)) {
+			for (int i = 0; i < count; i++) {
+				batches.add(buffer[i]);
+			}
+		}
+		assertEquals(expected, batches);
+		final List<Integer> consumed = new ArrayList<>();
+		b.forEach(new IntConsumer() {
+			@Override
+			public void accept(int value) {
+				consumed.add(value);
+			}
+		});
+		assertEquals(expected, consumed);
+		assertEquals(0, factory.create().getBatchIterator().nextBatch(buffer));
+	}
+
+	@Test
+	public void doTestAddMany() {
+		Bitmap b = factory.create();
+		int[] indexes = new int[] {0, 5, 64, 65, 70000, 70001, 1000000, 2000000};
+		b.add(indexes, 6);
+		assertEquals(6, b.getCardinality());
+		assertTrue(b.contains(70001));
+		assertFalse(b.contains(1000000));
+		// Add to a bitmap that already contains some of the indexes
+		b.add(new int[] {1, 5, 66, 70001, 140000, 3000000}, 6);
+		assertEquals(10, b.getCardinality());
+		for (int index : new int[] {0, 1, 5, 64, 65, 66, 70000, 70001, 140000, 3000000}) {
+			assertTrue(Integer.toString(index), b.contains(index));
+		}
+		b.add(indexes, 0);
+		assertEquals(10, b.getCardinality());
+	}
+
+	@Test
+	public void doTestAddBatches() {
+		Bitmap b = factory.create();
+		Bitmap expected = factory.create();
+		b.add(new int[] {3, 70}, 2);
+		expected.add(3);
+		expected.add(70);
+		// Two consecutive batches at high offsets, in partially filled arrays, as the table copies records
+		int[] batch = new int[4096];
+		for (int offset = 10000000; offset<10000000+2*batch.length*3; offset += batch.length*3) {
+			for (int i = 0; i < batch.length; i++) {
+				batch[i] = offset+3*i;
+			}
+			int length = batch.length-7;
+			b.add(batch, length);
+			for (int i = 0; i < length; i++) {
+				expected.add(batch[i]);
+			}
+		}
+		assertEquals(expected.getCardinality(), b.getCardinality());
+		assertEquals(expected.getCardinality(), b.andCardinality(expected));
+		assertFalse(b.contains(batch[batch.length-1]));
+	}
+
+	@Test (expected=IllegalStateException.class)
+	public void doTestLockAddMany() {
+		locked.add(new int[] {1}, 1);
+	}
+
+	@Test
+	public void doTestLockInPlace() {
+		Bitmap b = factory.create();
+		b.add(3);
+		b.lock();
+		assertTrue(b.isLocked());
+		assertSame(b, b.getLocked());
+		assertEquals(1, b.getCardinality());
+	}
+
+	@Test (expected=IllegalStateException.class)
+	public void doTestLockFlip() {
+		locked.flip(0, 5);
+	}
+
 	@Test (expected=IllegalStateException.class)
 	public void doTestLockAdd() {
 		locked.add(5);
@@ -77,6 +259,16 @@ public abstract class AbstractBitmapTest {
 		locked.or(factory.create());
 	}
 	
+	@Test (expected=IllegalStateException.class)
+	public void doTestLockOrMany() {
+		locked.or(Arrays.asList(factory.create(), factory.create()));
+	}
+	
+	@Test (expected=IllegalStateException.class)
+	public void doTestLockAndMany() {
+		locked.and(Arrays.asList(factory.create(), factory.create()));
+	}
+	
 	@Test (expected=IllegalStateException.class)
 	public void doTestLockXOr() {
 		locked.xor(factory.create());
@@ -0,0 +1,216 @@
+package com.fathzer.imt;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.fathzer.imt.implementation.SimpleTagsTableFactory;
+import com.fathzer.imt.util.IntIterator;
+import com.fathzer.imt.util.LatencyHistogram;
+
+/** A mixed read/write load test.
+ * <br>Reader threads evaluate expressions on a locked snapshot of a table, while a writer thread adds and deletes records
+ * in a mutable copy and regularly publishes a new snapshot. Readers check each result against the expected cardinality computed by the writer
+ * (with the lazy iterator, which does not share the evaluation code of {@link TagsTable#evaluate(String, boolean)}).
+ * <br>The unit test runs a short load. The main method runs a longer one for several readers counts and reports the throughput,
+ * the latency percentiles and the allocation rate of the readers.
+ */
+public class ConcurrentStressTest {
+	private static final String[] EXPRESSIONS = {"A", "A && B", "A && !C", "B || C || D", "!(A || D)", "atLeast(2, A, B, C, D)"};
+	private static final String[] TAGS = {"A", "B", "C", "D"};
+	private static final int INITIAL_RECORDS = 20000;
+	private static final int MUTATIONS_PER_SNAPSHOT = 200;
+
+	/** A locked table and the expected results of the expressions on it. */
+	private static final class Snapshot {
+		private final TagsTable<String> table;
+		private final int[] expected;
+
+		Snapshot(TagsTable<String> table) {
+			this.table = table;
+			this.expected = new int[EXPRESSIONS.length];
+			for (int i = 0; i < EXPRESSIONS.length; i++) {
+				IntIterator iterator = ((ExtendedEvaluator<String>)table.getFactory().getEvaluator()).getIterator(table, EXPRESSIONS[i], false);
+				while (iterator.hasNext()) {
+					iterator.next();
+					expected[i]++;
+				}
+			}
+		}
+	}
+
+	/** The result of a load test. */
+	static final class Report {
+		int readers;
+		double seconds;
+		long queries;
+		long mutations;
+		long snapshots;
+		long allocatedBytes;
+		final LatencyHistogram latencies = new LatencyHistogram();
+
+		@Override
+		public String toString() {
+			return String.format("%2d readers: %10.0f queries/s, p50=%8dus, p99=%8dus, p999=%8dus, %8.1f MB/s allocated per reader, %d mutations, %d snapshots",
+					readers, queries/seconds, latencies.getPercentile(50)/1000, latencies.getPercentile(99)/1000, latencies.getPercentile(99.9)/1000,
+					allocatedBytes/seconds/readers/1e6, mutations, snapshots);
+		}
+	}
+
+	@Test
+	public void test() throws InterruptedException {
+		for (SimpleTagsTableFactory factory : Arrays.asList(SimpleTagsTableFactory.ROARING_FACTORY, SimpleTagsTableFactory.EWAH_FACTORY, SimpleTagsTableFactory.BITSET_FACTORY)) {
+			for (int readers : new int[] {1, 4}) {
+				Report report = run(factory, readers, 200);
+				assertTrue(report.queries>0);
+				assertTrue(report.mutations>0);
+				assertTrue(report.snapshots>0);
+			}
+		}
+	}
+
+	/** Runs the load test.
+	 * @param factory The factory of the table
+	 * @param readers The number of reader threads
+	 * @param durationMillis The duration of the test
+	 * @return The report of the test
+	 * @throws InterruptedException if the current thread is interrupted
+	 * @throws AssertionError if a reader got a wrong result or an exception
+	 */
+	static Report run(SimpleTagsTableFactory factory, int readers, long durationMillis) throws InterruptedException {
+		final TagsTable<String> table = new TagsTable<>(factory);
+		final Random random = new Random(readers);
+		for (int i = 0; i < INITIAL_RECORDS; i++) {
+			table.addRecord(getRecord(random), false);
+		}
+		final AtomicReference<Snapshot> snapshot = new AtomicReference<>(new Snapshot(table.getLocked()));
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		final Report report = new Report();
+		report.readers = readers;
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < readers; i++) {
+			threads.add(new Thread("reader-"+i) {
+				@Override
+				public void run() {
+					long allocated = getAllocatedBytes();
+					long queries = 0;
+					try {
+						start.await();
+						while (!stop.get()) {
+							Snapshot current = snapshot.get();
+							int index = (int) (queries % EXPRESSIONS.length);
+							long time = System.nanoTime();
+							Bitmap result = current.table.evaluate(EXPRESSIONS[index], false);
+							report.latencies.record(System.nanoTime()-time);
+							if (result.getCardinality()!=current.expected[index]) {
+								throw new AssertionError(EXPRESSIONS[index]+" returned "+result.getCardinality()+" records instead of "+current.expected[index]);
+							}
+							queries++;
+						}
+					} catch (Throwable e) {
+						error.compareAndSet(null, e);
+					}
+					synchronized (report) {
+						report.queries += queries;
+						report.allocatedBytes += getAllocatedBytes()-allocated;
+					}
+				}
+			});
+		}
+		threads.add(new Thread("writer") {
+			@Override
+			public void run() {
+				long mutations = 0;
+				long snapshots = 0;
+				try {
+					start.await();
+					while (!stop.get()) {
+						if (random.nextInt(3)==0 && table.getLogicalSize()>0) {
+							int id = random.nextInt(table.getSize());
+							if (!table.getDeletedRecords().contains(id)) {
+								table.deleteRecord(id);
+							}
+						} else {
+							table.addRecord(getRecord(random), false);
+						}
+						mutations++;
+						if (mutations%MUTATIONS_PER_SNAPSHOT==0) {
+							snapshot.set(new Snapshot(table.getLocked()));
+							snapshots++;
+						}
+					}
+				} catch (Throwable e) {
+					error.compareAndSet(null, e);
+				}
+				synchronized (report) {
+					report.mutations = mutations;
+					report.snapshots = snapshots;
+				}
+			}
+		});
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		Thread.sleep(durationMillis);
+		stop.set(true);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		report.seconds = (System.nanoTime()-begin)/1e9;
+		if (error.get()!=null) {
+			throw new AssertionError(error.get());
+		}
+		return report;
+	}
+
+	private static java.util.Iterator<String> getRecord(Random random) {
+		List<String> tags = new ArrayList<>();
+		for (String tag : TAGS) {
+			if (random.nextBoolean()) {
+				tags.add(tag);
+			}
+		}
+		return tags.iterator();
+	}
+
+	/** Gets the number of bytes allocated by the current thread.
+	 * @return a number of bytes, or 0 if the JVM does not support allocation measurement.
+	 */
+	private static long getAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/** Runs the load test with 1 to 8 readers and prints the reports.
+	 * @param args The duration of each test in seconds (default 5)
+	 * @throws InterruptedException if the current thread is interrupted
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		long duration = args.length>0 ? Long.parseLong(args[0])*1000 : 5000;
+		for (String name : new String[] {"ROARING", "EWAH", "BITSET"}) {
+			SimpleTagsTableFactory factory = name.equals("ROARING") ? SimpleTagsTableFactory.ROARING_FACTORY :
+				(name.equals("EWAH") ? SimpleTagsTableFactory.EWAH_FACTORY : SimpleTagsTableFactory.BITSET_FACTORY);
+			System.out.println(name);
+			for (int readers = 1; readers <= 8; readers *= 2) {
+				System.out.println(run(factory, readers, duration));
+			}
+		}
+	}
+}
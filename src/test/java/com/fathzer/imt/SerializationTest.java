@@ -19,6 +19,8 @@ public class SerializationTest {
 		table.addRecord(new Record("A/C"), false);
 		table.addRecord(new Record("B/D"), false);
 		table.deleteRecord(0);
+		table.registerView("BorC", "B || C");
+		table.setValue(1, "price", 12, false);
 		table = table.getLocked();
 		byte[] bytes = toBytes(table);
 		test(table);
@@ -27,6 +29,41 @@ public class SerializationTest {
 		test(table);
 	}
 	
+	@Test
+	public void oldFormatTest() throws IOException, ClassNotFoundException {
+		// These tables were serialized by version 0.0.6, before views, columns and lazy deletion were added.
+		// Each one contains the records A/C (deleted) and B/D. The bitset one is locked.
+		for (String name : new String[] {"roaring", "ewah", "bitset"}) {
+			TagsTable<String> table = fromResource("baseline-"+name+".ser");
+			assertEquals(name, 2, table.getSize());
+			assertEquals(name, 1, table.getLogicalSize());
+			assertEquals(name, "bitset".equals(name), table.isLocked());
+			assertEquals(name, 0, table.evaluate("A", true).getCardinality());
+			assertTrue(name, table.evaluate("D && B", true).contains(1));
+			assertEquals(name, 1, table.evaluate("!C", true).getCardinality());
+			assertEquals(name, 1, table.evaluate("B || C", true).getCardinality());
+			if (table.isLocked()) {
+				table = table.clone();
+			}
+			// The table supports the features added after version 0.0.6 and is serialized with the current format
+			table.registerView("BorC", "B || C");
+			table.setValue(1, "price", 12, false);
+			table.setLazyDeletion(true);
+			table = fromBytes(toBytes(table));
+			test(table);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private TagsTable<String> fromResource(String name) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(getClass().getResourceAsStream(name));
+		try {
+			return (TagsTable<String>) in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
 	private void test(TagsTable<String> table) {
 		assertEquals(1, table.getLogicalSize());
 		assertEquals(2, table.getSize());
@@ -34,6 +71,9 @@ public class SerializationTest {
 		Bitmap dSet = table.evaluate("D", true);
 		assertEquals(1, dSet.getCardinality());
 		assertTrue(dSet.contains(1));
+		assertEquals(1, table.evaluate("BorC", true).getCardinality());
+		assertEquals(1, table.evaluate("price between 10 and 20", true).getCardinality());
+		assertEquals(Long.valueOf(12), table.getValue(1, "price"));
 		if (!table.isLocked()) {
 			table.addRecord(new Record("E"), false);
 			assertEquals(2, table.getSize());
@@ -4,9 +4,18 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.commons.collections4.IteratorUtils;
 import org.junit.Test;
@@ -95,6 +104,931 @@ public class TableTest {
 		assertTrue(table.contains(0, "ZZ"));
 	}
 	
+	@Test
+	public void countTest() {
+		doCountTest(SimpleTagsTableFactory.BITSET_FACTORY);
+		doCountTest(SimpleTagsTableFactory.ROARING_FACTORY);
+		doCountTest(SimpleTagsTableFactory.EWAH_FACTORY);
+	}
+
+	private void doCountTest(SimpleTagsTableFactory factory) {
+		TagsTable<String> table = new TagsTable<>(factory);
+		table.addRecord(new Record("A/C/E"), false);
+		table.addRecord(new Record("B/D/F"), false);
+		table.addRecord(new Record("A/B"), false);
+		table.addRecord(new Record("C/D"), false);
+		table.addRecord(new Record("E"), false);
+		String[] expressions = new String[] {"", "A", "!A", "A && B", "A || B", "A || B || !E", "A && !E", "!(A || C) && !E", "!(A && C) || E", "Z || A", "Z && A", "(A || D) && (B || C || E)", "Z",
+				"B || E", "A && C", "!A && C", "(A || B) && C"};
+		checkCounts(table, expressions);
+		// With lazy deletion, the tags bitmaps still contain the deleted records
+		TagsTable<String> lazy = table.clone();
+		lazy.setLazyDeletion(true);
+		lazy.deleteRecord(0);
+		lazy.deleteRecord(1);
+		checkCounts(lazy, expressions);
+		table.deleteRecord(1);
+		table.deleteRecord(2);
+		checkCounts(table, expressions);
+		table = table.getLocked();
+		checkCounts(table, expressions);
+	}
+
+	private void checkCounts(TagsTable<String> table, String[] expressions) {
+		for (String expression : expressions) {
+			Bitmap expected = table.evaluate(expression, false);
+			assertEquals(expression, expected.getCardinality(), table.count(expression, false));
+			assertEquals(expression, !expected.isEmpty(), table.exists(expression, false));
+			// Check the limited evaluation returns the first records of the full evaluation
+			for (int limit = 0; limit <= expected.getCardinality()+1; limit++) {
+				Bitmap limited = table.evaluate(expression, false, limit);
+				assertEquals(expression, Math.min(limit, expected.getCardinality()), limited.getCardinality());
+				IntIterator expectedIterator = expected.getIterator();
+				IntIterator iterator = limited.getIterator();
+				while (iterator.hasNext()) {
+					assertEquals(expression, expectedIterator.next(), iterator.next());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void evaluateAllTest() {
+		TagsTable<String> table = new TagsTable<>(SimpleTagsTableFactory.ROARING_FACTORY);
+		for (int i = 0; i < 1000; i++) {
+			StringBuilder record = new StringBuilder();
+			record.append(i%2==0 ? "EU" : "US");
+			if (i%3==0) {
+				record.append("/active");
+			}
+			if (i%5==0) {
+				record.append("/premium");
+			}
+			table.addRecord(new Record(record.toString()), false);
+		}
+		table.deleteRecord(30);
+		List<String> expressions = Arrays.asList("EU && active", "(active && EU) || premium", "!(EU && active) && premium", "", "US", "Z",
+				"(EU && active) || (US && !active)", "premium && (EU && active)", "EU && active",
+				// Shared negations, whose complement is shared too
+				"active && !(US || premium)", "EU || !(US || premium)", "!(US || premium)", "!!(US || premium)");
+		List<Bitmap> results = table.evaluateAll(expressions, false);
+		assertEquals(expressions.size(), results.size());
+		for (int i = 0; i < expressions.size(); i++) {
+			Bitmap expected = table.evaluate(expressions.get(i), false);
+			assertTrue(results.get(i).isLocked());
+			assertEquals(expressions.get(i), expected.getCardinality(), results.get(i).getCardinality());
+			assertEquals(expressions.get(i), expected.getCardinality(), results.get(i).andCardinality(expected));
+		}
+	}
+
+	@Test
+	public void basicEvaluatorTest() {
+		// An evaluator that only implements the Evaluator interface
+		SimpleTagsTableFactory factory = new SimpleTagsTableFactory() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Bitmap create() {
+				return SimpleTagsTableFactory.ROARING_FACTORY.create();
+			}
+
+			@Override
+			public Evaluator<String> getEvaluator() {
+				return new Evaluator<String>() {
+					@Override
+					public Bitmap evaluate(TagsTable<String> table, String expression, boolean failIfUnknown) {
+						return SimpleTagsTableFactory.ROARING_FACTORY.getEvaluator().evaluate(table, expression, failIfUnknown);
+					}
+				};
+			}
+		};
+		TagsTable<String> table = new TagsTable<>(factory);
+		table.setResultCacheSize(1024*1024);
+		table.addRecord(new Record("A/B"), false);
+		table.addRecord(new Record("A/C"), false);
+		table.addRecord(new Record("B/C"), false);
+		table.deleteRecord(1);
+		assertEquals(1, table.evaluate("A", true).getCardinality());
+		assertEquals(1, table.evaluateParallel("A && B", true).getCardinality());
+		assertEquals(2, table.count("B || C", true));
+		assertEquals(1, table.evaluate("B", true, 1).getCardinality());
+		assertTrue(table.exists("C", true));
+		assertFalse(table.exists("A && C", true));
+		List<Bitmap> results = table.evaluateAll(Arrays.asList("A", "!A", ""), true);
+		assertEquals(Arrays.asList(1, 1, 2), Arrays.asList(results.get(0).getCardinality(), results.get(1).getCardinality(), results.get(2).getCardinality()));
+		QueryPlan plan = table.explain("B && !A", true);
+		assertEquals(1, plan.getCardinality());
+		assertTrue(plan.getChildren().isEmpty());
+		try {
+			table.registerView("V", "A || B");
+			fail("Views require an extended evaluator");
+		} catch (UnsupportedOperationException e) {
+			// Ok
+		}
+	}
+
+	@Test
+	public void facetCountsTest() {
+		TagsTable<String> table = new TagsTable<>(SimpleTagsTableFactory.EWAH_FACTORY);
+		List<String> facets = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			facets.add("F"+i);
+		}
+		for (int i = 0; i < 1000; i++) {
+			table.addRecord(new Record((i%2==0 ? "EU" : "US")+"/F"+(i%40)+"/F"+(i%7)), false);
+		}
+		table.deleteRecord(2);
+		facets.add("Z");
+		for (String filter : new String[] {"EU", "", "!EU && F3", "Z"}) {
+			Map<String, Integer> counts = table.facetCounts(filter, facets, false);
+			assertEquals(facets, new ArrayList<>(counts.keySet()));
+			for (String facet : facets) {
+				String expression = filter.isEmpty() ? facet : "("+filter+") && "+facet;
+				assertEquals(expression, table.count(expression, false), counts.get(facet).intValue());
+			}
+		}
+	}
+
+	@Test(expected = UnknownTagException.class)
+	public void facetCountsUnknownTest() {
+		TagsTable<String> table = new TagsTable<>(SimpleTagsTableFactory.ROARING_FACTORY);
+		table.addRecord(new Record("A/B"), false);
+		table.facetCounts("A", Arrays.asList("B", "Z"), true);
+	}
+
+	@Test
+	public void evaluateParallelTest() {
+		doEvaluateParallelTest(SimpleTagsTableFactory.BITSET_FACTORY);
+		doEvaluateParallelTest(SimpleTagsTableFactory.ROARING_FACTORY);
+		doEvaluateParallelTest(SimpleTagsTableFactory.EWAH_FACTORY);
+	}
+
+	private void doEvaluateParallelTest(SimpleTagsTableFactory factory) {
+		// The table has to be big enough to be split in many ranges
+		TagsTable<String> table = new TagsTable<>(factory);
+		for (int i = 0; i < 300000; i++) {
+			table.addRecord(new Record(i%2==0 ? "EU" : (i%7==0 ? "US/active" : "US")), false);
+		}
+		table.deleteRecord(70000);
+		table.deleteRecord(70001);
+		String[] expressions = new String[] {"EU", "!EU", "US && !active", "!(EU || active)", "EU || active", "active && Z", "Z || !active", ""};
+		for (String expression : expressions) {
+			Bitmap expected = table.evaluate(expression, false);
+			Bitmap result = table.evaluateParallel(expression, false);
+			assertTrue(result.isLocked());
+			assertEquals(expression, expected.getCardinality(), result.getCardinality());
+			assertEquals(expression, expected.getCardinality(), result.andCardinality(expected));
+		}
+	}
+
+	@Test
+	public void bulkLoaderTest() {
+		doBulkLoaderTest(SimpleTagsTableFactory.BITSET_FACTORY);
+		doBulkLoaderTest(SimpleTagsTableFactory.ROARING_FACTORY);
+		doBulkLoaderTest(SimpleTagsTableFactory.EWAH_FACTORY);
+	}
+
+	private void doBulkLoaderTest(SimpleTagsTableFactory factory) {
+		TagsTable<String> expected = new TagsTable<>(factory);
+		BulkLoader<String> loader = new BulkLoader<>(factory);
+		for (int i = 0; i < 100000; i++) {
+			String record = i%2==0 ? "EU/color:red" : (i%7==0 ? "US/active/active" : (i%1000==0 ? "" : "US/color:blue"));
+			assertEquals(expected.addRecord(new Record(record), false), loader.addRecord(new Record(record)));
+		}
+		assertEquals(100000, loader.getSize());
+		TagsTable<String> table = loader.build();
+		assertEquals(expected.getSize(), table.getSize());
+		assertEquals(expected.getLogicalSize(), table.getLogicalSize());
+		assertEquals(expected.getTagsNumber(), table.getTagsNumber());
+		String[] expressions = new String[] {"EU", "!EU", "US && !active", "!(EU || active)", "color:*", "active && Z", ""};
+		for (String expression : expressions) {
+			Bitmap result = table.evaluate(expression, false);
+			assertEquals(expression, expected.evaluate(expression, false).getCardinality(), result.getCardinality());
+			assertEquals(expression, result.getCardinality(), result.andCardinality(expected.evaluate(expression, false)));
+		}
+		// The built table is mutable
+		assertEquals(100000, table.addRecord(new Record("EU"), false));
+		table.deleteRecord(0);
+		assertEquals(expected.count("EU", false), table.count("EU", false));
+		try {
+			loader.build();
+			fail();
+		} catch (IllegalStateException e) {
+			// Ok, the loader was already used
+		}
+	}
+
+	@Test
+	public void resultCacheTest() {
+		TagsTable<String> table = new TagsTable<>(SimpleTagsTableFactory.ROARING_FACTORY);
+		table.setResultCacheSize(1024*1024);
+		table.addRecord(new Record("A/B"), false);
+		table.addRecord(new Record("A/C"), false);
+		table.addRecord(new Record("B/C"), false);
+		Bitmap ab = table.evaluate("A && B", true);
+		assertEquals(1, ab.getCardinality());
+		// Equivalent expressions share the cached result
+		assertSame(ab, table.evaluate("(B&&A)", true));
+		Bitmap notA = table.evaluate("!A", true);
+		assertSame(notA, table.evaluate("!A", true));
+		
+		// Changing a tag the expression does not depend on does not invalidate the result
+		table.add(0, "C", true);
+		assertSame(ab, table.evaluate("A && B", true));
+		assertSame(notA, table.evaluate("!A", true));
+		
+		table.add(2, "A", true);
+		Bitmap ab2 = table.evaluate("A && B", true);
+		assertNotSame(ab, ab2);
+		assertEquals(2, ab2.getCardinality());
+		assertEquals(2, table.count("A && B", true));
+		assertEquals(0, table.evaluate("!A", true).getCardinality());
+		
+		// Adding a record invalidates expressions that contains a negation
+		notA = table.evaluate("!A", true);
+		table.addRecord(new Record("D"), false);
+		assertSame(ab2, table.evaluate("A && B", true));
+		assertEquals(1, table.evaluate("!A", true).getCardinality());
+		
+		// Deleting a record invalidates the results that depend on its tags
+		table.deleteRecord(3);
+		assertSame(ab2, table.evaluate("A && B", true));
+		table.deleteRecord(1);
+		assertEquals(2, table.evaluate("A && B", true).getCardinality());
+		assertEquals(0, table.evaluate("A && !B", true).getCardinality());
+		table.deleteRecord(0);
+		assertEquals(1, table.evaluate("A && B", true).getCardinality());
+		
+		// Results bigger than the cache are not cached
+		table.setResultCacheSize(1);
+		assertEquals(1, table.getResultCacheSize());
+		assertNotSame(table.evaluate("A", true), table.evaluate("A", true));
+		table.setResultCacheSize(0);
+		assertEquals(0, table.getResultCacheSize());
+	}
+
+	@Test
+	public void resultCacheUnknownTagTest() {
+		TagsTable<String> table = new TagsTable<>(SimpleTagsTableFactory.ROARING_FACTORY);
+		table.setResultCacheSize(1024*1024);
+		table.addRecord(new Record("A/B"), false);
+		table.addRecord(new Record("A"), false);
+		// A result computed with unknown tags considered false should not hide the unknown tag to a checked evaluation
+		assertEquals(2, table.evaluate("A || Z", false).getCardinality());
+		assertEquals(2, table.count("A || Z", false));
+		assertEquals(2, table.evaluateAll(Arrays.asList("A || Z"), false).get(0).getCardinality());
+		try {
+			table.evaluate("A || Z", true);
+			fail();
+		} catch (UnknownTagException e) {
+			// Ok, Z is unknown
+		}
+		try {
+			table.count("A || Z", true);
+			fail();
+		} catch (UnknownTagException e) {
+			// Ok, Z is unknown
+		}
+		try {
+			table.evaluateAll(Arrays.asList("A || Z"), true);
+			fail();
+		} catch (UnknownTagException e) {
+			// Ok, Z is unknown
+		}
+		try {
+			table.explain("A || Z", true);
+			fail();
+		} catch (UnknownTagException e) {
+			// Ok, Z is unknown
+		}
+
+		// A checked result can be returned to an unchecked evaluation
+		Bitmap ab = table.evaluate("A && B", true);
+		assertSame(ab, table.evaluate("A && B", false));
+		assertSame(ab, table.evaluate("A && B", true));
+	}
+
+	@Test
+	public void deletedRecordsTest() {
+		TagsTable<String> table = new TagsTable<>(SimpleTagsTableFactory.ROARING_FACTORY);
+		table.addRecord(new Record("A/B"), false);
+		table.addRecord(new Record("A"), false);
+		table.addRecord(new Record("B"), false);
+		table.addRecord(new Record("C"), false);
+		table.deleteRecord(1);
+		for (String expression : new String[] {"A", "!B", "A || B", "!C && !A", "!(A && B)"}) {
+			Bitmap result = table.evaluate(expression, false);
+			assertTrue(result.isLocked());
+			assertFalse(expression, result.contains(1));
+		}
+		// The bitmap of a locked table is returned without being copied when it contains no deleted record
+		TagsTable<String> locked = table.getLocked();
+		assertSame(locked.getBitMapIndex("B"), locked.evaluate("B", false));
+		assertEquals(1, locked.evaluate("A", false).getCardinality());
+	}
+
+	@Test
+	public void batchTest() {
+		doBatchTest(SimpleTagsTableFactory.BITSET_FACTORY);
+		doBatchTest(SimpleTagsTableFactory.ROARING_FACTORY);
+		doBatchTest(SimpleTagsTableFactory.EWAH_FACTORY);
+	}
+
+	private void doBatchTest(SimpleTagsTableFactory factory) {
+		TagsTable<String> expected = new TagsTable<>(factory);
+		TagsTable<String> table = new TagsTable<>(factory);
+		for (TagsTable<String> t : Arrays.asList(expected, table)) {
+			t.setResultCacheSize(1024*1024);
+			t.registerView("base", "A && !B");
+		}
+		List<Iterator<String>> records = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			String record = i%2==0 ? "A" : (i%3==0 ? "A/B/B" : "C");
+			assertEquals(i, expected.addRecord(new Record(record), false));
+			records.add(new Record(record));
+		}
+		int[] indexes = table.addRecords(records, false);
+		assertEquals(1000, indexes.length);
+		assertEquals(999, indexes[999]);
+		for (int i = 0; i < 1000; i+=10) {
+			expected.setValue(i, "price", i, false);
+			table.setValue(i, "price", i, false);
+		}
+		String[] expressions = new String[] {"A", "!B", "base", "A || C", "price > 500", ""};
+		checkBatch(expected, table, expressions);
+
+		Bitmap deleted = factory.create();
+		for (int i = 999; i >= 0; i--) {
+			if (i%7==0 || i>=990) {
+				expected.deleteRecord(i);
+				deleted.add(i);
+			}
+		}
+		table.deleteRecords(deleted);
+		assertEquals(expected.getSize(), table.getSize());
+		checkBatch(expected, table, expressions);
+		// Already deleted records are ignored
+		table.deleteRecords(deleted.getRange(0, table.getSize()));
+		checkBatch(expected, table, expressions);
+
+		// Deleted records are replaced first
+		records = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			assertEquals(expected.addRecord(new Record("A/D"), false), table.addRecords(Collections.<Iterator<String>>singletonList(new Record("A/D")), false)[0]);
+			records.add(new Record(i%2==0 ? "B/D" : "C/D"));
+		}
+		indexes = table.addRecords(records, false);
+		for (int i = 0; i < 200; i++) {
+			assertEquals(expected.addRecord(new Record(i%2==0 ? "B/D" : "C/D"), false), indexes[i]);
+		}
+		checkBatch(expected, table, expressions);
+		assertEquals(expected.count("D", false), table.count("D", false));
+
+		// The table is not modified if a tag is unknown
+		try {
+			table.addRecords(Arrays.<Iterator<String>>asList(new Record("A"), new Record("A/Z")), true);
+			fail();
+		} catch (UnknownTagException e) {
+			checkBatch(expected, table, expressions);
+		}
+		try {
+			Bitmap out = factory.create();
+			out.add(table.getSize());
+			table.deleteRecords(out);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Ok
+		}
+	}
+
+	@Test
+	public void lazyDeletionTest() throws Exception {
+		doLazyDeletionTest(SimpleTagsTableFactory.BITSET_FACTORY);
+		doLazyDeletionTest(SimpleTagsTableFactory.ROARING_FACTORY);
+		doLazyDeletionTest(SimpleTagsTableFactory.EWAH_FACTORY);
+	}
+
+	private void doLazyDeletionTest(SimpleTagsTableFactory factory) throws Exception {
+		TagsTable<String> expected = new TagsTable<>(factory);
+		TagsTable<String> table = new TagsTable<>(factory);
+		table.setLazyDeletion(true);
+		assertTrue(table.isLazyDeletion());
+		for (TagsTable<String> t : Arrays.asList(expected, table)) {
+			t.setResultCacheSize(1024*1024);
+			t.registerView("base", "A && !B");
+			for (int i = 0; i < 100; i++) {
+				t.addRecord(new Record(i%2==0 ? "A/color:red" : (i%3==0 ? "A/B" : "C/color:blue")), false);
+				t.setValue(i, "price", i, false);
+			}
+		}
+		String[] expressions = new String[] {"A", "!B", "base", "A || C", "color:*", "size:*", "price > 50", "atLeast(1, A, B)", ""};
+		checkBatch(expected, table, expressions);
+
+		for (int id : new int[] {99, 3, 4, 50}) {
+			expected.deleteRecord(id);
+			table.deleteRecord(id);
+		}
+		assertEquals(4, table.getTombstonesCount());
+		assertEquals(100, table.getSize());
+		assertTrue(table.getBitMapIndex("A").contains(4));
+		assertFalse(table.contains(4, "A"));
+		assertFalse(table.getTags(4).hasNext());
+		checkBatch(expected, table, expressions);
+
+		// Tombstones are not reused
+		for (TagsTable<String> t : Arrays.asList(expected, table)) {
+			t.addRecord(new Record("B/color:green"), false);
+		}
+		assertEquals(101, table.getSize());
+		checkCardinalities(expected, table, expressions);
+		// A bitmap modified by a write is cleaned
+		table.add(0, "A", false);
+		assertFalse(table.getBitMapIndex("A").contains(4));
+		checkCardinalities(expected, table, expressions);
+
+		// A locked copy and a deserialized copy keep the tombstones
+		checkCardinalities(expected, table.getLocked(), expressions);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(table);
+		out.close();
+		@SuppressWarnings("unchecked")
+		TagsTable<String> deserialized = (TagsTable<String>) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals(4, deserialized.getTombstonesCount());
+		checkCardinalities(expected, deserialized, expressions);
+
+		table.cleanDeletedRecords();
+		assertEquals(0, table.getTombstonesCount());
+		assertFalse(table.getBitMapIndex("color:red").contains(4));
+		checkCardinalities(expected, table, expressions);
+		// Cleaned records are reused
+		assertEquals(3, table.addRecord(new Record("C/size:L"), false));
+		expected.addRecord(new Record("C/size:L"), false);
+		checkCardinalities(expected, table, expressions);
+
+		Bitmap deleted = factory.create();
+		deleted.add(10);
+		deleted.add(11);
+		expected.deleteRecords(deleted);
+		table.deleteRecords(deleted);
+		assertEquals(2, table.getTombstonesCount());
+		checkCardinalities(expected, table, expressions);
+		table.setLazyDeletion(false);
+		assertFalse(table.isLazyDeletion());
+		assertEquals(0, table.getTombstonesCount());
+		checkCardinalities(expected, table, expressions);
+	}
+
+	@Test
+	public void compactTest() {
+		for (boolean lazy : new boolean[] {false, true}) {
+			doCompactTest(SimpleTagsTableFactory.BITSET_FACTORY, lazy);
+			doCompactTest(SimpleTagsTableFactory.ROARING_FACTORY, lazy);
+			doCompactTest(SimpleTagsTableFactory.EWAH_FACTORY, lazy);
+		}
+	}
+
+	private void doCompactTest(SimpleTagsTableFactory factory, boolean lazy) {
+		TagsTable<String> table = new TagsTable<>(factory);
+		table.setLazyDeletion(lazy);
+		table.setResultCacheSize(1024*1024);
+		table.registerView("base", "A && !B");
+		for (int i = 0; i < 1000; i++) {
+			table.addRecord(new Record(i%2==0 ? "A/color:red" : (i%3==0 ? "A/B" : "C/color:blue")), false);
+			table.setValue(i, "price", i, false);
+		}
+		String[] expressions = new String[] {"A", "!B", "base", "A || C", "color:*", "price > 500", "!(A && price < 100)", ""};
+		for (int i = 0; i < 1000; i+=7) {
+			table.deleteRecord(i);
+		}
+		TagsTable<String> expected = table.clone();
+		for (String expression : expressions) {
+			table.evaluate(expression, false);
+		}
+
+		int[] mapping = table.compact();
+		assertEquals(1000, mapping.length);
+		assertEquals(expected.getLogicalSize(), table.getSize());
+		assertEquals(table.getSize(), table.getLogicalSize());
+		assertTrue(table.getDeletedRecords().isEmpty());
+		assertEquals(0, table.getTombstonesCount());
+		int last = -1;
+		for (int i = 0; i < mapping.length; i++) {
+			if (i%7==0) {
+				assertEquals(-1, mapping[i]);
+			} else {
+				assertEquals(last+1, mapping[i]);
+				last = mapping[i];
+				List<String> tags = IteratorUtils.toList(table.getTags(mapping[i]));
+				List<String> expectedTags = IteratorUtils.toList(expected.getTags(i));
+				Collections.sort(tags);
+				Collections.sort(expectedTags);
+				assertEquals(expectedTags, tags);
+				assertEquals(expected.getValue(i, "price"), table.getValue(mapping[i], "price"));
+			}
+		}
+		checkCardinalities(expected, table, expressions);
+		// The table remains usable
+		assertEquals(table.getSize(), table.addRecord(new Record("A/B"), false));
+		expected.addRecord(new Record("A/B"), false);
+		checkCardinalities(expected, table, expressions);
+		// Compacting a table without deleted records changes nothing
+		mapping = table.compact();
+		for (int i = 0; i < mapping.length; i++) {
+			assertEquals(i, mapping[i]);
+		}
+		assertEquals(0, new TagsTable<String>(factory).compact().length);
+	}
+
+	private void checkCardinalities(TagsTable<String> expected, TagsTable<String> table, String[] expressions) {
+		assertEquals(expected.getLogicalSize(), table.getLogicalSize());
+		for (String expression : expressions) {
+			assertEquals(expression, expected.evaluate(expression, false).getCardinality(), table.evaluate(expression, false).getCardinality());
+			assertEquals(expression, expected.count(expression, false), table.count(expression, false));
+		}
+	}
+
+	private void checkBatch(TagsTable<String> expected, TagsTable<String> table, String[] expressions) {
+		assertEquals(expected.getLogicalSize(), table.getLogicalSize());
+		for (String expression : expressions) {
+			Bitmap result = table.evaluate(expression, false);
+			assertEquals(expression, expected.evaluate(expression, false).getCardinality(), result.getCardinality());
+			assertEquals(expression, result.getCardinality(), result.andCardinality(expected.evaluate(expression, false)));
+		}
+	}
+
+	@Test
+	public void viewTest() {
+		doViewTest(SimpleTagsTableFactory.BITSET_FACTORY);
+		doViewTest(SimpleTagsTableFactory.ROARING_FACTORY);
+		doViewTest(SimpleTagsTableFactory.EWAH_FACTORY);
+	}
+
+	private void doViewTest(SimpleTagsTableFactory factory) {
+		TagsTable<String> table = new TagsTable<>(factory);
+		table.setResultCacheSize(1024*1024);
+		table.addRecord(new Record("active/verified"), false);
+		table.addRecord(new Record("active/banned/verified"), false);
+		table.addRecord(new Record("verified"), false);
+		table.registerView("base", "active && !banned && verified");
+		table.registerView("premiumBase", "base && premium");
+		checkView(table, "base", "active && !banned && verified");
+		assertEquals(0, table.evaluate("premiumBase", true).getCardinality());
+		
+		table.add(2, "active", true);
+		table.remove(1, "banned");
+		int id = table.addRecord(new Record("active/verified/premium"), false);
+		checkView(table, "base", "active && !banned && verified");
+		assertEquals(1, table.evaluate("premiumBase", true).getCardinality());
+		assertEquals(3, table.count("base && !premium", true));
+		table.deleteRecord(id);
+		checkView(table, "base", "active && !banned && verified");
+		assertEquals(0, table.evaluate("premiumBase", true).getCardinality());
+		table.addTags(Collections.singletonList("banned2"), Collections.singletonList(table.evaluate("base", true).getIterator()));
+		table.registerView("clean", "base && !banned2");
+		assertEquals(0, table.evaluate("clean", true).getCardinality());
+		
+		TagsTable<String> locked = table.getLocked();
+		table.remove(0, "verified");
+		checkView(table, "base", "active && !banned && verified");
+		checkView(locked, "base", "active && !banned && verified");
+		assertTrue(locked.getView("base").isLocked());
+		assertEquals(3, locked.evaluate("base", true).getCardinality());
+
+		try {
+			table.registerView("base", "A");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Ok, view already exists
+		}
+		try {
+			table.unregisterView("base");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Ok, base is used by premiumBase
+		}
+		assertTrue(table.unregisterView("clean"));
+		assertFalse(table.unregisterView("clean"));
+		assertNull(table.getView("clean"));
+	}
+
+	private void checkView(TagsTable<String> table, String view, String expression) {
+		Bitmap expected = table.evaluate(expression, true);
+		Bitmap bitmap = table.getView(view);
+		assertEquals(expected.getCardinality(), bitmap.getCardinality());
+		assertEquals(expected.getCardinality(), bitmap.andCardinality(expected));
+	}
+
+	@Test
+	public void prefixTest() {
+		TagsTable<String> table = new TagsTable<>(SimpleTagsTableFactory.ROARING_FACTORY);
+		table.setResultCacheSize(1024*1024);
+		table.addRecord(new Record("color:red/country:fr"), false);
+		table.addRecord(new Record("color:blue/country:fi"), false);
+		table.addRecord(new Record("country:de"), false);
+		table.addRecord(new Record("colorless"), false);
+		assertEquals(2, table.evaluate("color:*", true).getCardinality());
+		assertEquals(2, table.evaluate("country:f*", true).getCardinality());
+		assertEquals(1, table.evaluate("color:* && !country:fr*", true).getCardinality());
+		assertEquals(3, table.count("color*", true));
+		assertEquals(4, table.evaluate("*", true).getCardinality());
+		assertEquals(0, table.evaluate("shape:*", true).getCardinality());
+		Bitmap colors = table.getPrefixBitMapIndex("color:");
+		assertSame(colors, table.getPrefixBitMapIndex("color:"));
+		
+		// Changes of the matching tags, and new matching tags, discard the cached unions
+		table.add(2, "color:green", false);
+		assertNotSame(colors, table.getPrefixBitMapIndex("color:"));
+		assertEquals(3, table.evaluate("color:*", true).getCardinality());
+		table.addRecord(new Record("color:red"), false);
+		assertEquals(4, table.evaluate("color:*", true).getCardinality());
+		table.remove(0, "color:red");
+		assertEquals(3, table.evaluate("color:*", true).getCardinality());
+		table.deleteRecord(1);
+		assertEquals(2, table.evaluate("color:*", true).getCardinality());
+		
+		table.registerView("french", "country:fr*");
+		table.add(2, "country:fr", true);
+		assertEquals(2, table.evaluate("french", true).getCardinality());
+		assertEquals(2, table.getLocked().evaluate("color:*", true).getCardinality());
+
+		// A tag that ends with the wildcard is not a pattern
+		table.addRecord(new Record("rating:5"), false);
+		table.addRecord(new Record("rating:50"), false);
+		assertEquals(2, table.evaluate("rating:5*", true).getCardinality());
+		int id = table.addRecord(new Record("rating:5*"), false);
+		Bitmap rating = table.evaluate("rating:5*", true);
+		assertEquals(1, rating.getCardinality());
+		assertTrue(rating.contains(id));
+		assertEquals(1, table.count("rating:5*", true));
+		assertEquals(1, table.evaluate("rating:5*", true, 10).getCardinality());
+		assertEquals(3, table.evaluate("rating:*", true).getCardinality());
+		assertEquals(2, table.count("rating:* && !rating:5*", true));
+	}
+
+	@Test
+	public void numericColumnTest() {
+		doNumericColumnTest(SimpleTagsTableFactory.BITSET_FACTORY);
+		doNumericColumnTest(SimpleTagsTableFactory.ROARING_FACTORY);
+		doNumericColumnTest(SimpleTagsTableFactory.EWAH_FACTORY);
+	}
+
+	private void doNumericColumnTest(SimpleTagsTableFactory factory) {
+		TagsTable<String> table = new TagsTable<>(factory);
+		table.setResultCacheSize(1024*1024);
+		Random random = new Random(1);
+		Long[] prices = new Long[500];
+		for (int i = 0; i < prices.length; i++) {
+			table.addRecord(new Record(i%3==0 ? "cheap" : "expensive"), false);
+			if (i%7!=0) {
+				prices[i] = (long)random.nextInt(300);
+				table.setValue(i, "price", prices[i], false);
+			}
+		}
+		table.deleteRecord(10);
+		prices[10] = null;
+		table.registerView("bargain", "cheap && price < 50");
+		assertEquals(prices[1], table.getValue(1, "price"));
+		assertNull(table.getValue(0, "price"));
+		assertNull(table.getValue(10, "price"));
+
+		checkColumn(table, prices, "price > 100", 101, Long.MAX_VALUE, false);
+		checkColumn(table, prices, "price>=100", 100, Long.MAX_VALUE, false);
+		checkColumn(table, prices, "price < 50", 0, 49, false);
+		checkColumn(table, prices, "price <= 0", 0, 0, false);
+		checkColumn(table, prices, "price = 77", 77, 77, false);
+		checkColumn(table, prices, "price between 10 and 200", 10, 200, false);
+		checkColumn(table, prices, "price > 1000", 1, 0, false);
+		checkColumn(table, prices, "price > -5", 0, Long.MAX_VALUE, false);
+		checkColumn(table, prices, "cheap && price between 10 and 200", 10, 200, true);
+		checkColumn(table, prices, "bargain", 0, 49, true);
+		assertEquals(table.getLogicalSize()-table.count("price > 100", true), table.count("!(price > 100)", true));
+
+		// Changing values updates the cached results and the views
+		table.setValue(0, "price", 1L<<40, false);
+		prices[0] = 1L<<40;
+		table.setValue(3, "price", 20, false);
+		prices[3] = 20L;
+		table.removeValue(1, "price");
+		prices[1] = null;
+		checkColumn(table, prices, "price > 100", 101, Long.MAX_VALUE, false);
+		checkColumn(table, prices, "price = 20", 20, 20, false);
+		checkColumn(table, prices, "bargain", 0, 49, true);
+		checkColumn(table.getLocked(), prices, "price between 10 and 200", 10, 200, false);
+		checkColumn(table.clone(), prices, "price < 50", 0, 49, false);
+
+		try {
+			table.evaluate("weight > 10", true);
+			fail();
+		} catch (UnknownTagException e) {
+			// Ok, weight is unknown
+		}
+		assertEquals(0, table.evaluate("weight > 10", false).getCardinality());
+		try {
+			table.setValue(0, "price", -1, false);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Ok, negative values are not supported
+		}
+	}
+
+	@Test
+	public void comparisonTagTest() {
+		TagsTable<String> table = new TagsTable<>(SimpleTagsTableFactory.ROARING_FACTORY);
+		table.setResultCacheSize(1024*1024);
+		table.addRecord(new Record("size=10/v<2"), false);
+		table.addRecord(new Record("size=12"), false);
+		table.addRecord(new Record("A"), false);
+		// The table has no size column, size=10 is a tag
+		Bitmap size10 = table.evaluate("size=10", true);
+		assertEquals(1, size10.getCardinality());
+		assertTrue(size10.contains(0));
+		assertEquals(2, table.count("!(v<2)", true));
+		assertEquals(2, table.evaluate("size=10 || size=12", true, 10).getCardinality());
+		assertEquals(1, table.evaluateAll(Arrays.asList("A || v<2", "v<2"), true).get(1).getCardinality());
+		try {
+			table.evaluate("size=11", true);
+			fail();
+		} catch (UnknownTagException e) {
+			// Ok, size=11 is neither a tag nor a column
+		}
+
+		// Once the table has a size column, the comparison refers to the column
+		table.setValue(2, "size", 10, false);
+		size10 = table.evaluate("size=10", true);
+		assertEquals(1, size10.getCardinality());
+		assertTrue(size10.contains(2));
+		assertEquals(1, table.count("size=11 || size=10", true));
+		// Even if a tag has the same name, the column has the priority
+		assertEquals(1, table.count("size<=10 || size=12", true));
+
+		// A comparison that is a tag is not equivalent to the same comparison written differently
+		int id = table.addRecord(new Record("price>5"), false);
+		assertTrue(table.evaluate("price>5", true).contains(id));
+		assertEquals(0, table.evaluate("price>=6", false).getCardinality());
+		assertEquals(0, table.count("price between 6 and 9223372036854775807", false));
+		List<Bitmap> results = table.evaluateAll(Arrays.asList("A || price>5", "A || price>=6"), false);
+		assertEquals(2, results.get(0).getCardinality());
+		assertEquals(1, results.get(1).getCardinality());
+
+		// A constant that does not fit in a long can't be compared, the literal is a tag
+		id = table.addRecord(new Record("id=99999999999999999999"), false);
+		assertTrue(table.evaluate("id=99999999999999999999", true).contains(id));
+		assertEquals(0, table.count("id between 1 and 99999999999999999999", false));
+	}
+
+	@Test
+	public void topKTest() {
+		doTopKTest(SimpleTagsTableFactory.BITSET_FACTORY);
+		doTopKTest(SimpleTagsTableFactory.ROARING_FACTORY);
+		doTopKTest(SimpleTagsTableFactory.EWAH_FACTORY);
+	}
+
+	private void doTopKTest(SimpleTagsTableFactory factory) {
+		TagsTable<String> table = new TagsTable<>(factory);
+		Random random = new Random(2);
+		final Long[] scores = new Long[400];
+		for (int i = 0; i < scores.length; i++) {
+			table.addRecord(new Record(i%2==0 ? "even" : "odd"), false);
+			if (i%5!=0) {
+				// Few distinct values to have ties
+				scores[i] = (long)random.nextInt(40);
+				table.setValue(i, "score", scores[i], false);
+			}
+		}
+		table.deleteRecord(2);
+		scores[2] = null;
+		for (int k : new int[]{0, 1, 10, 57, 150, 1000}) {
+			checkTopK(table, scores, k, true);
+			checkTopK(table, scores, k, false);
+		}
+		assertEquals(0, table.topK("even", false, "unknown", 10, true).getCardinality());
+		try {
+			table.topK("even", true, "unknown", 10, true);
+			fail();
+		} catch (UnknownTagException e) {
+			// Ok, the column is unknown
+		}
+	}
+
+	private void checkTopK(TagsTable<String> table, final Long[] scores, int k, final boolean descending) {
+		List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < scores.length; i+=2) {
+			if (scores[i]!=null) {
+				expected.add(i);
+			}
+		}
+		// Sort by score, then by id
+		Collections.sort(expected, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				int result = descending ? scores[o2].compareTo(scores[o1]) : scores[o1].compareTo(scores[o2]);
+				return result==0 ? o1.compareTo(o2) : result;
+			}
+		});
+		expected = expected.subList(0, Math.min(k, expected.size()));
+		Bitmap result = table.topK("even", true, "score", k, descending);
+		assertTrue(result.isLocked());
+		assertEquals(expected.size(), result.getCardinality());
+		for (Integer id : expected) {
+			assertTrue(result.contains(id));
+		}
+	}
+
+	private void checkColumn(TagsTable<String> table, Long[] prices, String expression, long min, long max, boolean cheapOnly) {
+		Bitmap result = table.evaluate(expression, true);
+		int expected = 0;
+		for (int i = 0; i < prices.length; i++) {
+			boolean matches = prices[i]!=null && prices[i]>=min && prices[i]<=max && (!cheapOnly || i%3==0);
+			assertEquals(expression+" on "+i, matches, result.contains(i));
+			if (matches) {
+				expected++;
+			}
+		}
+		assertEquals(expected, result.getCardinality());
+		assertEquals(expected, table.count(expression, true));
+	}
+
+	@Test
+	public void explainTest() {
+		TagsTable<String> table = new TagsTable<>(SimpleTagsTableFactory.ROARING_FACTORY);
+		for (int i = 0; i < 100; i++) {
+			table.addRecord(new Record(i%2==0 ? "A/B" : (i%3==0 ? "A/C" : "C")), false);
+		}
+		QueryPlan plan = table.explain("A && (B || !C)", true);
+		assertEquals("&&", plan.getOperator());
+		assertEquals(table.evaluate("A && (B || !C)", true).getCardinality(), plan.getCardinality());
+		assertEquals(2, plan.getChildren().size());
+		assertFalse(plan.isCached());
+		assertTrue(plan.getSizeInBytes()>0);
+		assertTrue(plan.getTime()>0);
+		QueryPlan a = null;
+		QueryPlan or = null;
+		for (QueryPlan child : plan.getChildren()) {
+			if (child.getOperator().equals("A")) {
+				a = child;
+			} else {
+				or = child;
+			}
+		}
+		assertTrue(a.isCached());
+		assertEquals(67, a.getCardinality());
+		assertEquals("||", or.getOperator());
+		assertEquals(2, or.getChildren().size());
+		assertNotNull(plan.toString());
+
+		// A cached result is reported as a single cached node
+		table.setResultCacheSize(1024*1024);
+		table.evaluate("A && (B || !C)", true);
+		plan = table.explain("(B || !C) && A", true);
+		assertTrue(plan.isCached());
+		assertTrue(plan.getChildren().isEmpty());
+		assertEquals(table.evaluate("A && (B || !C)", true).getCardinality(), plan.getCardinality());
+	}
+
+	@Test
+	public void metricsTest() throws Exception {
+		TagsTable<String> table = new TagsTable<>(SimpleTagsTableFactory.ROARING_FACTORY);
+		assertNull(table.getMetrics());
+		TableMetrics metrics = table.enableMetrics();
+		assertSame(metrics, table.enableMetrics());
+		for (int i = 0; i < 100; i++) {
+			table.addRecord(new Record(i%10==0 ? "A/B" : "A"), false);
+		}
+		table.deleteRecord(5);
+		assertEquals(101, metrics.getMutationCount());
+		for (int i = 0; i < 10; i++) {
+			table.evaluate("A && !B", true);
+		}
+		table.count("B", true);
+		assertEquals(11, metrics.getQueryCount());
+		assertTrue(metrics.getMedianLatency()>0);
+		assertTrue(metrics.getLatency99thPercentile()>=metrics.getMedianLatency());
+		assertTrue(metrics.getQueryRate()>0);
+		assertEquals(0.01, metrics.getTombstoneRatio(), 1e-9);
+		assertEquals(2, metrics.getTagsNumber());
+		String[] largest = metrics.getLargestTags(1);
+		assertEquals(1, largest.length);
+		assertTrue(largest[0].startsWith("A="));
+		assertTrue(metrics.getTagsSizeInBytes()>0);
+
+		TagsTable<String> locked = table.getLocked();
+		table.clone();
+		assertEquals(1, metrics.getLockCount());
+		assertEquals(1, metrics.getCloneCount());
+		assertNull(locked.getMetrics());
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("com.fathzer.imt:type=TagsTable,name=metricsTest");
+		server.registerMBean(metrics, name);
+		try {
+			assertEquals(11L, server.getAttribute(name, "QueryCount"));
+			assertEquals(99, server.getAttribute(name, "LogicalSize"));
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+
 	@Test
 	public void emptyExpressionTest() {
 		TagsTable<String> table = new TagsTable<>(SimpleTagsTableFactory.BITSET_FACTORY);
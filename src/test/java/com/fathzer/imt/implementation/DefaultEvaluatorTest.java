@@ -0,0 +1,189 @@
+package com.fathzer.imt.implementation;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fathzer.imt.Bitmap;
+import com.fathzer.imt.ProfileListener;
+import com.fathzer.imt.QueryPlan;
+import com.fathzer.imt.TagsTable;
+import com.fathzer.imt.UnknownTagException;
+import com.fathzer.imt.util.IntIterator;
+
+public class DefaultEvaluatorTest {
+	private static class TestEvaluator extends DefaultEvaluator<String> {
+		TestEvaluator(int cacheSize) {
+			super(cacheSize);
+		}
+
+		@Override
+		protected String stringToTag(String variable) {
+			return variable;
+		}
+	}
+
+	@Test
+	public void testCompiledCache() {
+		TestEvaluator evaluator = new TestEvaluator(2);
+		Node<String> plan = evaluator.compile("A && (B || !C)");
+		assertSame(plan, evaluator.compile("A && (B || !C)"));
+		assertEquals("(A && (B || !C))", plan.toString());
+		evaluator.compile("A");
+		evaluator.compile("B");
+		assertNotSame(plan, evaluator.compile("A && (B || !C)"));
+
+		// A compiled expression does not depend on the table
+		TagsTable<String> table1 = new TagsTable<>(SimpleTagsTableFactory.ROARING_FACTORY);
+		table1.addRecord(Arrays.asList("A").iterator(), false);
+		table1.addRecord(Arrays.asList("A","C").iterator(), false);
+		TagsTable<String> table2 = new TagsTable<>(SimpleTagsTableFactory.ROARING_FACTORY);
+		table2.addRecord(Arrays.asList("A","B","C").iterator(), false);
+		assertEquals(1, evaluator.evaluate(table1, "A && (B || !C)", false).getCardinality());
+		assertEquals(1, evaluator.evaluate(table2, "A && (B || !C)", true).getCardinality());
+	}
+
+	@Test
+	public void testChains() {
+		TestEvaluator evaluator = new TestEvaluator(10);
+		assertEquals("(A && B && C && (D || E || F))", evaluator.compile("A && B && (C && (D || E || F))").toString());
+
+		TagsTable<String> table = new TagsTable<>(SimpleTagsTableFactory.BITSET_FACTORY);
+		for (int i = 0; i < 100; i++) {
+			table.addRecord(i%10==0 ? Arrays.asList("common","rare").iterator() : Arrays.asList("common").iterator(), false);
+		}
+		assertEquals(10, evaluator.evaluate(table, "common && rare", false).getCardinality());
+		assertEquals(10, evaluator.evaluate(table, "rare && common", false).getCardinality());
+		assertEquals(0, evaluator.evaluate(table, "rare && common && !common", false).getCardinality());
+		assertEquals(100, evaluator.evaluate(table, "rare || common || unknown", false).getCardinality());
+		assertEquals(90, evaluator.evaluate(table, "!rare && (unknown || common)", false).getCardinality());
+	}
+
+	@Test
+	public void testRangeEstimates() {
+		TestEvaluator evaluator = new TestEvaluator(10);
+		TagsTable<String> table = new TagsTable<>(SimpleTagsTableFactory.BITSET_FACTORY);
+		for (int i = 0; i < 100; i++) {
+			table.addRecord(i%10==0 ? Arrays.asList("common","rare").iterator() : Arrays.asList("common").iterator(), false);
+		}
+		// In a range, tags cardinalities are scaled from the whole table
+		EvaluationContext<String> context = new EvaluationContext<>(table, false, 0, 50);
+		assertEquals(50, evaluator.compile("common").estimateCardinality(context));
+		assertEquals(5, evaluator.compile("rare").estimateCardinality(context));
+		assertEquals(45, evaluator.compile("!rare").estimateCardinality(context));
+		assertEquals(0, evaluator.compile("unknown").estimateCardinality(context));
+		assertEquals(10, evaluator.compile("rare").estimateCardinality(new EvaluationContext<>(table, false)));
+		try {
+			evaluator.compile("unknown").estimateCardinality(new EvaluationContext<>(table, true, 0, 50));
+			fail();
+		} catch (UnknownTagException e) {
+			// Ok
+		}
+	}
+
+	@Test
+	public void testNegations() {
+		TestEvaluator evaluator = new TestEvaluator(100);
+		String[] expressions = new String[] {"!A", "!!A", "A && !B", "!A && !B", "!A && !B && C", "A || !B", "!A || !B", "!(A || !B)",
+				"!(!A && !B) && C", "(A || !B) && (!C || B)", "!(A && B) || (C && !A)", "!A && !Z", "!Z || A", "!(!A || !B || !C)"};
+		for (SimpleTagsTableFactory factory : new SimpleTagsTableFactory[] {SimpleTagsTableFactory.BITSET_FACTORY, SimpleTagsTableFactory.ROARING_FACTORY, SimpleTagsTableFactory.EWAH_FACTORY}) {
+			// A record for each combination of tags
+			TagsTable<String> table = new TagsTable<>(factory);
+			for (int i = 0; i < 16; i++) {
+				List<String> tags = new ArrayList<>();
+				for (int j = 0; j < 3; j++) {
+					if ((i & (1<<j)) != 0) {
+						tags.add(Character.toString((char)('A'+j)));
+					}
+				}
+				table.addRecord(tags.iterator(), false);
+			}
+			table.deleteRecord(15);
+			for (String expression : expressions) {
+				// The lazy iterator, which does not use complements, is the reference
+				Bitmap expected = factory.create();
+				IntIterator iterator = evaluator.getIterator(table, expression, false);
+				while (iterator.hasNext()) {
+					expected.add(iterator.next());
+				}
+				Bitmap result = evaluator.evaluate(table, expression, false);
+				assertEquals(expression, expected.getCardinality(), result.getCardinality());
+				assertEquals(expression, expected.getCardinality(), result.andCardinality(expected));
+				assertEquals(expression, expected.getCardinality(), evaluator.count(table, expression, false));
+			}
+		}
+	}
+
+	@Test
+	public void testThreshold() {
+		TestEvaluator evaluator = new TestEvaluator(100);
+		assertEquals("atLeast(2, A, (B || C), !D)", evaluator.compile("atLeast(2, A, B || C, !D)").toString());
+		assertEquals(evaluator.describe("atLeast(2, A, B, C)").getKey(), evaluator.describe("atLeast(2, C, A, B)").getKey());
+		for (SimpleTagsTableFactory factory : new SimpleTagsTableFactory[] {SimpleTagsTableFactory.BITSET_FACTORY, SimpleTagsTableFactory.ROARING_FACTORY, SimpleTagsTableFactory.EWAH_FACTORY}) {
+			// A record for each combination of 6 tags
+			TagsTable<String> table = new TagsTable<>(factory);
+			for (int i = 0; i < 64; i++) {
+				List<String> tags = new ArrayList<>();
+				for (int j = 0; j < 6; j++) {
+					if ((i & (1<<j)) != 0) {
+						tags.add(Character.toString((char)('A'+j)));
+					}
+				}
+				table.addRecord(tags.iterator(), false);
+			}
+			for (int k = 0; k <= 7; k++) {
+				Bitmap result = evaluator.evaluate(table, "atLeast("+k+", A, B, C, D, E, F)", true);
+				for (int i = 0; i < 64; i++) {
+					assertEquals(k+" on "+i, Integer.bitCount(i)>=k, result.contains(i));
+					assertEquals(k+" on "+i, Integer.bitCount(i)>=k, evaluator.matches(table, "atLeast("+k+", A, B, C, D, E, F)", i, true));
+				}
+			}
+			Bitmap result = evaluator.evaluate(table, "atLeast(2, A, !B, C || D) && E", true);
+			for (int i = 0; i < 64; i++) {
+				int count = ((i & 1)!=0 ? 1 : 0) + ((i & 2)==0 ? 1 : 0) + ((i & 12)!=0 ? 1 : 0);
+				assertEquals(count>=2 && (i & 16)!=0, result.contains(i));
+			}
+			assertEquals(42, evaluator.count(table, "atLeast(3, A, B, C, D, E, F)", true));
+		}
+		try {
+			evaluator.compile("atLeast(A, B, C)");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Ok, the threshold is not an integer
+		}
+	}
+
+	@Test
+	public void testProfile() {
+		TestEvaluator evaluator = new TestEvaluator(10);
+		TagsTable<String> table = new TagsTable<>(SimpleTagsTableFactory.BITSET_FACTORY);
+		table.addRecord(Arrays.asList("A","B").iterator(), false);
+		table.addRecord(Arrays.asList("A").iterator(), false);
+		final List<QueryPlan> plans = new ArrayList<>();
+		evaluator.setProfileListener(new ProfileListener() {
+			@Override
+			public void profiled(String expression, QueryPlan plan) {
+				assertEquals("A && !B", expression);
+				plans.add(plan);
+			}
+		}, 2);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(1, evaluator.evaluate(table, "A && !B", true).getCardinality());
+		}
+		assertEquals(2, plans.size());
+		QueryPlan plan = plans.get(0);
+		assertEquals("&&", plan.getOperator());
+		assertEquals(1, plan.getCardinality());
+		// !B is evaluated as a difference
+		QueryPlan not = plan.getChildren().get(0).getOperator().equals("!") ? plan.getChildren().get(0) : plan.getChildren().get(1);
+		assertTrue(not.isComplemented());
+		assertEquals(1, not.getCardinality());
+		evaluator.setProfileListener(null, 1);
+		evaluator.evaluate(table, "A && !B", true);
+		assertEquals(2, plans.size());
+	}
+}